@@ -0,0 +1,198 @@
+package net.tiny.nlp.open;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Response body reader with pooled chunk buffers and a size cap.
+ *
+ * A body of known length is read into an array of the exact size. A body of
+ * unknown length is read into pooled chunks and copied once into the result,
+ * the chunks are returned to the pool for the next request.
+ * The bytes over the max size are not read, the body is truncated.
+ *
+ */
+final class BodyReader {
+
+    static final int CHUNK_SIZE = 8192*2; //16K
+    static final int MAX_POOLED_CHUNKS = 256; //4M
+
+    private static final ConcurrentLinkedQueue<byte[]> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private BodyReader() {}
+
+    /**
+     * Read the body.
+     *
+     * @param in
+     * @param contentLength The declared length or -1 when unknown
+     * @param maxSize Max bytes to read
+     * @return The body of max size at most
+     * @throws IOException
+     */
+    static byte[] read(InputStream in, int contentLength, int maxSize) throws IOException {
+        if (contentLength >= 0) {
+            return readFully(in, Math.min(contentLength, maxSize));
+        }
+        final List<byte[]> chunks = new ArrayList<>();
+        try {
+            int total = 0;
+            byte[] chunk = null;
+            int pos = CHUNK_SIZE;
+            while (total < maxSize) {
+                if (pos == CHUNK_SIZE) {
+                    chunk = acquire();
+                    chunks.add(chunk);
+                    pos = 0;
+                }
+                final int len = in.read(chunk, pos, Math.min(CHUNK_SIZE - pos, maxSize - total));
+                if (len < 0) {
+                    break;
+                }
+                pos += len;
+                total += len;
+            }
+            final byte[] body = new byte[total];
+            int offset = 0;
+            for (byte[] c : chunks) {
+                final int len = Math.min(CHUNK_SIZE, total - offset);
+                System.arraycopy(c, 0, body, offset, len);
+                offset += len;
+            }
+            return body;
+        } finally {
+            for (byte[] c : chunks) {
+                release(c);
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        final byte[] body = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            final int len = in.read(body, offset, length - offset);
+            if (len < 0) {
+                // Shorter than the declared length
+                final byte[] shorter = new byte[offset];
+                System.arraycopy(body, 0, shorter, 0, offset);
+                return shorter;
+            }
+            offset += len;
+        }
+        return body;
+    }
+
+    static byte[] acquire() {
+        final byte[] chunk = POOL.poll();
+        if (null == chunk) {
+            return new byte[CHUNK_SIZE];
+        }
+        POOLED.decrementAndGet();
+        return chunk;
+    }
+
+    static void release(byte[] chunk) {
+        if (chunk.length == CHUNK_SIZE && POOLED.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+            POOL.offer(chunk);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    // Drop the pooled chunks
+    static int drain() {
+        int count = 0;
+        while (null != POOL.poll()) {
+            POOLED.decrementAndGet();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Limit the stream to max size, the rest of the stream is not read.
+     *
+     * @param in
+     * @param maxSize
+     * @return
+     */
+    static LimitedInputStream limit(InputStream in, long maxSize) {
+        return new LimitedInputStream(in, maxSize);
+    }
+
+    static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+        private boolean truncated = false;
+
+        LimitedInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.remaining = maxSize;
+        }
+
+        /**
+         * @return True when the stream has more bytes than max size
+         */
+        boolean isTruncated() {
+            return truncated;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0L) {
+                checkTruncated();
+                return -1;
+            }
+            final int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0L) {
+                checkTruncated();
+                return -1;
+            }
+            final int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void checkTruncated() throws IOException {
+            if (!truncated && in.read() != -1) {
+                truncated = true;
+            }
+        }
+    }
+}
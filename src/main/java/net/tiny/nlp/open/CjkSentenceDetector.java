@@ -0,0 +1,172 @@
+package net.tiny.nlp.open;
+
+import java.util.Arrays;
+
+import opennlp.tools.sentdetect.SentenceDetector;
+import opennlp.tools.util.Span;
+
+/**
+ * Rule based sentence splitter of Japanese and Chinese texts.
+ *
+ * A sentence ends with '。', '！', '？' (or '!', '?', '．' outside a Latin word) and the closing
+ * quotes or brackets following them, or with a line feed. The terminators
+ * inside the quotes and brackets like '「…。」と言った' do not end a sentence,
+ * but the quoted sentence followed by a next quote or a blank like '「…！」「…。」' does.
+ * The text is scanned once without copying, the detector is stateless and thread safe.
+ *
+ */
+public final class CjkSentenceDetector implements SentenceDetector {
+
+    public static final CjkSentenceDetector INSTANCE = new CjkSentenceDetector();
+
+    // Max nesting of the quotes and brackets
+    static final int MAX_DEPTH = 16;
+
+    private CjkSentenceDetector() {}
+
+    @Override
+    public String[] sentDetect(String s) {
+        return Span.spansToStrings(sentPosDetect(s), s);
+    }
+
+    @Override
+    public Span[] sentPosDetect(String s) {
+        int[] offsets = new int[16];
+        int count = 0;
+        final int length = s.length();
+        int start = 0;
+        int depth = 0;
+        int i = 0;
+        while (i < length) {
+            final char c = s.charAt(i++);
+            boolean end = false;
+            if (c == '\n') {
+                // The line feed always ends a sentence, the unclosed brackets are reset
+                depth = 0;
+                end = true;
+            } else if (isOpen(c)) {
+                if (depth < MAX_DEPTH) {
+                    depth++;
+                }
+            } else if (isClose(c)) {
+                if (depth > 0) {
+                    depth--;
+                }
+                if (depth == 0 && i >= 2 && isTerminator(s.charAt(i - 2))
+                        && (i == length || isOpen(s.charAt(i)) || isBlank(s.charAt(i)))) {
+                    end = true;
+                }
+            } else if (depth == 0 && isTerminator(c) && !isInWord(s, i - 1)) {
+                // Continuous terminators and the closing quotes belong to the sentence
+                while (i < length && (isTerminator(s.charAt(i)) || isClose(s.charAt(i)))) {
+                    i++;
+                }
+                end = true;
+            }
+            if (end || i == length) {
+                final int from = trimStart(s, start, i);
+                final int to = trimEnd(s, from, i);
+                if (from < to) {
+                    if (count + 2 > offsets.length) {
+                        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    }
+                    offsets[count++] = from;
+                    offsets[count++] = to;
+                }
+                start = i;
+            }
+        }
+        final Span[] spans = new Span[count / 2];
+        for (int n = 0; n < spans.length; n++) {
+            spans[n] = new Span(offsets[n * 2], offsets[n * 2 + 1]);
+        }
+        return spans;
+    }
+
+    static boolean isTerminator(char c) {
+        switch (c) {
+        case '。':
+        case '！':
+        case '？':
+        case '．':
+        case '!':
+        case '?':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    // The full width period of a decimal '１．５' or an abbreviation 'Ｕ．Ｓ．',
+    // or the half width '!' and '?' of a Latin word like 'Yahoo!ニュース' or 'Why?と聞いた'
+    static boolean isInWord(CharSequence s, int pos) {
+        if (pos + 1 >= s.length()) {
+            return false;
+        }
+        final char c = s.charAt(pos);
+        final char next = s.charAt(pos + 1);
+        if (c == '．') {
+            return Character.isDigit(next) || isLatin(next);
+        }
+        if (c == '!' || c == '?') {
+            return pos > 0 && isLatin(s.charAt(pos - 1))
+                    && !isBlank(next) && !isTerminator(next) && !isClose(next);
+        }
+        return false;
+    }
+
+    private static boolean isLatin(char c) {
+        return Character.isLetter(c) && Character.UnicodeScript.of(c) == Character.UnicodeScript.LATIN;
+    }
+
+    static boolean isOpen(char c) {
+        switch (c) {
+        case '「':
+        case '『':
+        case '（':
+        case '【':
+        case '〈':
+        case '《':
+        case '〔':
+        case '“':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    static boolean isClose(char c) {
+        switch (c) {
+        case '」':
+        case '』':
+        case '）':
+        case '】':
+        case '〉':
+        case '》':
+        case '〕':
+        case '”':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    // The blanks include the ideographic space
+    private static boolean isBlank(char c) {
+        return c == '　' || Character.isWhitespace(c);
+    }
+
+    private static int trimStart(CharSequence s, int start, int end) {
+        while (start < end && isBlank(s.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(CharSequence s, int start, int end) {
+        while (end > start && isBlank(s.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,245 @@
+package net.tiny.nlp.open;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Compact double-array trie of dictionary words.
+ *
+ * The chars of the words are mapped to dense codes, a node <code>s</code> has the child
+ * <code>t = base[s] + code(c)</code> when <code>check[t] == s</code>. The terminal of a word
+ * is the child of code 0. The lookup walks two int arrays without any allocation.
+ *
+ */
+public final class DoubleArrayTrie implements WordDictionary {
+
+    private static final int ROOT = 0;
+    private static final int EMPTY = -1;
+
+    // Char to code, 0 is the terminal
+    private final char[] codes;
+    private final int[] base;
+    private final int[] check;
+    private final int size;
+
+    private DoubleArrayTrie(char[] codes, int[] base, int[] check, int size) {
+        this.codes = codes;
+        this.base = base;
+        this.check = check;
+        this.size = size;
+    }
+
+    /**
+     * Build the trie of the words.
+     *
+     * @param words
+     * @return
+     */
+    public static DoubleArrayTrie build(Collection<String> words) {
+        final String[] keys = new TreeSet<>(words).stream()
+                .filter(w -> !w.isEmpty())
+                .toArray(String[]::new);
+        // Dense codes by the char order
+        final char[] codes = new char[Character.MAX_VALUE + 1];
+        final TreeSet<Character> chars = new TreeSet<>();
+        for (String key : keys) {
+            for (int i = 0; i < key.length(); i++) {
+                chars.add(key.charAt(i));
+            }
+        }
+        char code = 1;
+        for (Character c : chars) {
+            codes[c] = code++;
+        }
+        final Builder builder = new Builder(codes, keys, code);
+        builder.build();
+        return new DoubleArrayTrie(codes, builder.base, builder.check, keys.length);
+    }
+
+    /**
+     * Load the dictionaries of one word per line, the empty lines and
+     * the lines starting with '#' are skipped.
+     *
+     * @param resources The classpath resources
+     * @return
+     * @throws IOException
+     */
+    public static DoubleArrayTrie load(String... resources) throws IOException {
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        final List<URL> urls = new ArrayList<>();
+        for (String res : resources) {
+            final URL url = loader.getResource(res);
+            if (null == url) {
+                throw new FileNotFoundException(res);
+            }
+            urls.add(url);
+        }
+        return load(urls);
+    }
+
+    public static DoubleArrayTrie load(Collection<URL> dictionaries) throws IOException {
+        final List<String> words = new ArrayList<>();
+        for (URL url : dictionaries) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        words.add(line);
+                    }
+                }
+            }
+        }
+        return build(words);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(CharSequence word) {
+        return word.length() > 0 && match(word, 0, word.length()) == word.length();
+    }
+
+    @Override
+    public int longestMatch(CharSequence text, int start) {
+        return match(text, start, text.length());
+    }
+
+    @Override
+    public int longestMatch(CharSequence text, int start, int end) {
+        return match(text, start, end);
+    }
+
+    private int match(CharSequence text, int start, int end) {
+        int s = ROOT;
+        int longest = 0;
+        for (int i = start; i < end; i++) {
+            final int code = codes[text.charAt(i)];
+            if (code == 0) {
+                break;
+            }
+            final int t = base[s] + code;
+            if (t >= check.length || check[t] != s) {
+                break;
+            }
+            s = t;
+            // The terminal child
+            final int e = base[s];
+            if (e < check.length && check[e] == s) {
+                longest = i - start + 1;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Build the double array from the sorted keys, depth first.
+     */
+    static class Builder {
+        final char[] codes;
+        final String[] keys;
+        final int alphabet;
+        int[] base;
+        int[] check;
+        private int nextCheckPos = 1;
+
+        Builder(char[] codes, String[] keys, int alphabet) {
+            this.codes = codes;
+            this.keys = keys;
+            this.alphabet = alphabet;
+            final int capacity = Math.max(1024, keys.length * 4);
+            this.base = new int[capacity];
+            this.check = new int[capacity];
+            Arrays.fill(check, EMPTY);
+        }
+
+        void build() {
+            check[ROOT] = ROOT;
+            insert(ROOT, 0, keys.length, 0);
+            // Shrink to the last used slot
+            int last = check.length - 1;
+            while (last > 0 && check[last] == EMPTY) {
+                last--;
+            }
+            base = Arrays.copyOf(base, last + alphabet + 1);
+            final int length = check.length;
+            check = Arrays.copyOf(check, last + alphabet + 1);
+            if (check.length > length) {
+                Arrays.fill(check, length, check.length, EMPTY);
+            }
+        }
+
+        // The keys [from, to) share the prefix of depth chars under the node
+        private void insert(int node, int from, int to, int depth) {
+            // Child codes in ascending order, 0 is the terminal
+            final int[] children = new int[to - from];
+            final int[] starts = new int[to - from + 1];
+            int n = 0;
+            int prev = -1;
+            for (int i = from; i < to; i++) {
+                final int code = depth < keys[i].length() ? codes[keys[i].charAt(depth)] : 0;
+                if (code != prev) {
+                    children[n] = code;
+                    starts[n] = i;
+                    n++;
+                    prev = code;
+                }
+            }
+            starts[n] = to;
+            final int b = findBase(children, n);
+            base[node] = b;
+            for (int j = 0; j < n; j++) {
+                check[b + children[j]] = node;
+            }
+            for (int j = 0; j < n; j++) {
+                // The terminal has no child
+                if (children[j] != 0) {
+                    insert(b + children[j], starts[j], starts[j + 1], depth + 1);
+                }
+            }
+        }
+
+        private int findBase(int[] children, int n) {
+            int b = Math.max(1, nextCheckPos - children[0]);
+            while (true) {
+                ensure(b + alphabet);
+                boolean free = true;
+                for (int j = 0; j < n && free; j++) {
+                    free = check[b + children[j]] == EMPTY;
+                }
+                if (free && b + children[0] != ROOT) {
+                    break;
+                }
+                b++;
+            }
+            // Skip the dense area next time
+            while (nextCheckPos < check.length && check[nextCheckPos] != EMPTY) {
+                nextCheckPos++;
+            }
+            return b;
+        }
+
+        private void ensure(int capacity) {
+            if (capacity < check.length) {
+                return;
+            }
+            final int length = Math.max(capacity + 1, check.length * 2);
+            final int old = check.length;
+            base = Arrays.copyOf(base, length);
+            check = Arrays.copyOf(check, length);
+            Arrays.fill(check, old, length, EMPTY);
+        }
+    }
+}
@@ -1,51 +1,411 @@
 package net.tiny.nlp.open;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import opennlp.tools.util.Span;
+
+/**
+ * The named entities extracted from sentences.
+ *
+ * An entity is stored once per type and text, the sentence index and the offsets
+ * of its first occurrence, the best probability and the occurrence count are kept
+ * in primitive arrays. The token offsets are the positions in the tokenized sentence
+ * of that index, the char offsets are the positions in the sentence joined by one space.
+ * The sentence index is the order of the sentence in the extracted document,
+ * or -1 when the entity has no offsets.
+ *
+ */
 public class Extraction {
 
-    private Map<String, List<String>> tokens = new HashMap<>();
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final List<String> typeNames = new ArrayList<>();
+    private final List<Map<String, Integer>> indexes = new ArrayList<>();
+
+    private String[] words = new String[INITIAL_CAPACITY];
+    private int[] types = new int[INITIAL_CAPACITY];
+    private int[] sentences = new int[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int[] charStarts = new int[INITIAL_CAPACITY];
+    private int[] charEnds = new int[INITIAL_CAPACITY];
+    private double[] probs = new double[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int size = 0;
 
     public Extraction append(String type, String word) {
-        List<String> values = tokens.get(type);
-        if(null == values) {
-            values = new ArrayList<>();
-            values.add(word);
-            tokens.put(type, values);
-        } else if (!values.contains(word)) {
-            values.add(word);
+        return append(type, word, -1, -1, -1, -1, -1, Double.NaN);
+    }
+
+    /**
+     * Append the entity of a span found in the single tokenized sentence.
+     *
+     * @param span
+     * @param sentence
+     * @return
+     */
+    public Extraction append(Span span, String[] sentence) {
+        return append(span, sentence, 0);
+    }
+
+    /**
+     * Append the entity of a span found in a tokenized sentence of a document.
+     *
+     * @param span
+     * @param sentence
+     * @param index The index of the sentence in the document
+     * @return
+     */
+    public Extraction append(Span span, String[] sentence, int index) {
+        int charStart = span.getStart();
+        for (int i = 0; i < span.getStart(); i++) {
+            charStart += sentence[i].length();
+        }
+        final String word = OpenNLP.span2string(span, sentence);
+        return append(span.getType(), word, index, span.getStart(), span.getEnd(),
+                charStart, charStart + word.length(), span.getProb());
+    }
+
+    public Extraction append(String type, String word, int start, int end, int charStart, int charEnd, double prob) {
+        return append(type, word, start < 0 ? -1 : 0, start, end, charStart, charEnd, prob);
+    }
+
+    public Extraction append(String type, String word, int sentence, int start, int end, int charStart, int charEnd, double prob) {
+        final int typeId = typeId(type);
+        final Map<String, Integer> index = indexes.get(typeId);
+        final Integer pos = index.get(word);
+        if (null != pos) {
+            final int i = pos;
+            counts[i]++;
+            if (Double.isNaN(probs[i]) || prob > probs[i]) {
+                probs[i] = prob;
+            }
+            return this;
+        }
+        ensureCapacity(size + 1);
+        words[size] = word;
+        types[size] = typeId;
+        sentences[size] = sentence;
+        starts[size] = start;
+        ends[size] = end;
+        charStarts[size] = charStart;
+        charEnds[size] = charEnd;
+        probs[size] = prob;
+        counts[size] = 1;
+        index.put(word, size);
+        size++;
+        return this;
+    }
+
+    /**
+     * Merge all entities of other extraction into this one.
+     * The sentence indexes of the other are kept, both are extracted from the same document.
+     *
+     * @param other
+     * @return
+     */
+    public Extraction merge(Extraction other) {
+        for (int i = 0; i < other.size; i++) {
+            final String type = other.typeNames.get(other.types[i]);
+            append(type, other.words[i], other.sentences[i], other.starts[i], other.ends[i],
+                    other.charStarts[i], other.charEnds[i], other.probs[i]);
+            final int pos = indexes.get(typeId(type)).get(other.words[i]);
+            counts[pos] += other.counts[i] - 1;
         }
         return this;
     }
 
     public String findFirst(String type) {
-        String[] values = find(type);
-        if (values.length > 0) {
-            return values[0];
+        final int typeId = typeNames.indexOf(type);
+        for (int i = 0; i < size && typeId >= 0; i++) {
+            if (types[i] == typeId) {
+                return words[i];
+            }
         }
         return null;
     }
 
     public String[] find(String type) {
-        List<String> values = tokens.get(type);
-        if(null == values) {
+        final int typeId = typeNames.indexOf(type);
+        if (typeId < 0) {
             return new String[0];
-        } else {
-            return values.toArray(new String[values.size()]);
         }
+        final String[] values = new String[indexes.get(typeId).size()];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (types[i] == typeId) {
+                values[n++] = words[i];
+            }
+        }
+        return values;
     }
 
-
     public String[] types() {
-        return tokens.keySet()
-                .toArray(new String[tokens.size()]);
+        return typeNames.toArray(new String[typeNames.size()]);
     }
 
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public String getType(int i) {
+        return typeNames.get(types[check(i)]);
+    }
+
+    public String getWord(int i) {
+        return words[check(i)];
+    }
+
+    public int getSentence(int i) {
+        return sentences[check(i)];
+    }
+
+    public int getStart(int i) {
+        return starts[check(i)];
+    }
+
+    public int getEnd(int i) {
+        return ends[check(i)];
+    }
+
+    public int getCharStart(int i) {
+        return charStarts[check(i)];
+    }
+
+    public int getCharEnd(int i) {
+        return charEnds[check(i)];
+    }
+
+    public double getProbability(int i) {
+        return probs[check(i)];
+    }
+
+    public int getCount(int i) {
+        return counts[check(i)];
+    }
+
+    /**
+     * Output all entities as TSV lines.
+     *
+     * @param out
+     */
     public void output(PrintStream out) {
+        try {
+            writeTsv(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.flush();
+    }
+
+    /**
+     * Write all entities as TSV lines of
+     * 'type, word, start, end, charStart, charEnd, probability, count, sentence'.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTsv(Appendable out) throws IOException {
+        for (int i = 0; i < size; i++) {
+            escapeTsv(typeNames.get(types[i]), out);
+            out.append('\t');
+            escapeTsv(words[i], out);
+            out.append('\t');
+            writeInt(starts[i], out);
+            out.append('\t');
+            writeInt(ends[i], out);
+            out.append('\t');
+            writeInt(charStarts[i], out);
+            out.append('\t');
+            writeInt(charEnds[i], out);
+            out.append('\t');
+            writeProbability(probs[i], out);
+            out.append('\t');
+            writeInt(counts[i], out);
+            out.append('\t');
+            writeInt(sentences[i], out);
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Write all entities as a JSON array of objects.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeJson(Appendable out) throws IOException {
+        out.append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append("{\"type\":");
+            escapeJson(typeNames.get(types[i]), out);
+            out.append(",\"word\":");
+            escapeJson(words[i], out);
+            out.append(",\"sentence\":");
+            writeInt(sentences[i], out);
+            out.append(",\"start\":");
+            writeInt(starts[i], out);
+            out.append(",\"end\":");
+            writeInt(ends[i], out);
+            out.append(",\"charStart\":");
+            writeInt(charStarts[i], out);
+            out.append(",\"charEnd\":");
+            writeInt(charEnds[i], out);
+            out.append(",\"probability\":");
+            if (Double.isNaN(probs[i])) {
+                out.append("null");
+            } else {
+                writeProbability(probs[i], out);
+            }
+            out.append(",\"count\":");
+            writeInt(counts[i], out);
+            out.append('}');
+        }
+        out.append(']');
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        try {
+            writeJson(sb);
+        } catch (IOException e) {
+            // StringBuilder never throws
+        }
+        return sb.toString();
+    }
+
+    private int typeId(String type) {
+        int id = typeNames.indexOf(type);
+        if (id < 0) {
+            id = typeNames.size();
+            typeNames.add(type);
+            indexes.add(new HashMap<>());
+        }
+        return id;
+    }
+
+    private int check(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", i, size));
+        }
+        return i;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= words.length) {
+            return;
+        }
+        final int length = Math.max(capacity, words.length * 2);
+        words = Arrays.copyOf(words, length);
+        types = Arrays.copyOf(types, length);
+        sentences = Arrays.copyOf(sentences, length);
+        starts = Arrays.copyOf(starts, length);
+        ends = Arrays.copyOf(ends, length);
+        charStarts = Arrays.copyOf(charStarts, length);
+        charEnds = Arrays.copyOf(charEnds, length);
+        probs = Arrays.copyOf(probs, length);
+        counts = Arrays.copyOf(counts, length);
+    }
+
+    static void writeInt(int value, Appendable out) throws IOException {
+        if (value < 0) {
+            out.append('-');
+            if (value == Integer.MIN_VALUE) {
+                out.append("2147483648");
+                return;
+            }
+            value = -value;
+        }
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    // Probability with 4 fraction digits, NaN as empty
+    static void writeProbability(double prob, Appendable out) throws IOException {
+        if (Double.isNaN(prob)) {
+            return;
+        }
+        final int scaled = (int) Math.round(prob * 10000d);
+        writeInt(scaled / 10000, out);
+        out.append('.');
+        final int fraction = Math.abs(scaled % 10000);
+        for (int divisor = 1000; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + (fraction / divisor) % 10));
+        }
+    }
 
+    static void escapeTsv(CharSequence value, Appendable out) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '\t':
+                out.append("\\t");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            default:
+                out.append(c);
+            }
+        }
+    }
+
+    static void escapeJson(CharSequence value, Appendable out) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    out.append("\\u00");
+                    out.append(Character.forDigit(c >> 4, 16));
+                    out.append(Character.forDigit(c & 0xF, 16));
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+        out.append('"');
     }
 }
@@ -0,0 +1,397 @@
+package net.tiny.nlp.open;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.sentdetect.SentenceDetector;
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.tokenize.WhitespaceTokenizer;
+import opennlp.tools.util.Span;
+
+/**
+ * Language routed extraction from raw texts or web pages.
+ *
+ * The language of a text is detected, then the text is split into sentences,
+ * tokenized and the named entities are extracted by the NER models of the language.
+ * The texts are prepared (fetch, detect, split and tokenize) and extracted by
+ * two groups of workers connected by bounded queues, so a slow stage blocks
+ * the previous one instead of buffering all documents.
+ *
+ */
+public class ExtractionPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(ExtractionPipeline.class.getName());
+
+    public static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_QUEUE_SIZE = 256;
+
+    // ISO 639-3 codes of the language detector to ISO 639-1 codes of the models
+    private static final Map<String, String> MODEL_LANGUAGES = new HashMap<>();
+    static {
+        for (String language : Locale.getISOLanguages()) {
+            MODEL_LANGUAGES.put(new Locale(language).getISO3Language(), language);
+        }
+        // Individual languages of the macro languages
+        MODEL_LANGUAGES.put("cmn", "zh");
+        MODEL_LANGUAGES.put("yue", "zh");
+        MODEL_LANGUAGES.put("wuu", "zh");
+        MODEL_LANGUAGES.put("arb", "ar");
+        MODEL_LANGUAGES.put("pes", "fa");
+        MODEL_LANGUAGES.put("zsm", "ms");
+        MODEL_LANGUAGES.put("ekk", "et");
+        MODEL_LANGUAGES.put("lvs", "lv");
+        MODEL_LANGUAGES.put("npi", "ne");
+        MODEL_LANGUAGES.put("swh", "sw");
+        MODEL_LANGUAGES.put("uzn", "uz");
+        MODEL_LANGUAGES.put("khk", "mn");
+        MODEL_LANGUAGES.put("nob", "nb");
+    }
+
+    private final int threads;
+    private final int queueSize;
+    private String[] types;
+    private Function<String, String> languageDetector = OpenNLP::guestLanguageCode;
+    private Function<String, SentenceDetector> sentenceDetectors = ExtractionPipeline::defaultSentenceDetector;
+    private Function<String, Tokenizer> tokenizers = language -> WhitespaceTokenizer.INSTANCE;
+
+    public ExtractionPipeline() {
+        this(DEFAULT_THREADS, DEFAULT_QUEUE_SIZE);
+    }
+
+    public ExtractionPipeline(int threads, int queueSize) {
+        if (threads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("Threads and queue size must be positive.");
+        }
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Extract the entity types only, all models of the language are used by default.
+     * A type covered by a {@link PatternNameFinder} is found by the patterns without the model.
+     *
+     * @param types
+     * @return
+     */
+    public ExtractionPipeline setTypes(String... types) {
+        this.types = (null == types || types.length == 0) ? null : types;
+        return this;
+    }
+
+    /**
+     * @param detector Returns the ISO 639-3 or 639-1 code of a text
+     * @return
+     */
+    public ExtractionPipeline setLanguageDetector(Function<String, String> detector) {
+        this.languageDetector = detector;
+        return this;
+    }
+
+    /**
+     * @param detectors Returns the thread safe sentence detector of a model language
+     * @return
+     */
+    public ExtractionPipeline setSentenceDetectors(Function<String, SentenceDetector> detectors) {
+        this.sentenceDetectors = detectors;
+        return this;
+    }
+
+    /**
+     * Use the sentence models of the factory, the text of a language without
+     * model is split by the default rules.
+     *
+     * @param factory
+     * @return
+     */
+    public ExtractionPipeline setSentenceDetectors(SentenceDetectorFactory factory) {
+        return setSentenceDetectors(language -> {
+            final SentenceDetector detector = factory.getSentenceDetector(language);
+            return null != detector ? detector : defaultSentenceDetector(language);
+        });
+    }
+
+    /**
+     * @param tokenizers Returns the thread safe tokenizer of a model language
+     * @return
+     */
+    public ExtractionPipeline setTokenizers(Function<String, Tokenizer> tokenizers) {
+        this.tokenizers = tokenizers;
+        return this;
+    }
+
+    /**
+     * Extract the named entities of a text on the calling thread.
+     *
+     * @param text
+     * @return
+     */
+    public Extraction extract(String text) {
+        return extract(prepare(text));
+    }
+
+    public Extraction extract(URL url) {
+        return extract(Textualization.text(url));
+    }
+
+    /**
+     * Extract the named entities of many texts concurrently.
+     *
+     * @param texts
+     * @return The extractions in the same order of the texts
+     */
+    public List<Extraction> extractAll(Iterable<String> texts) {
+        final List<Callable<String>> sources = new ArrayList<>();
+        for (String text : texts) {
+            sources.add(() -> text);
+        }
+        return run(sources);
+    }
+
+    /**
+     * Fetch the web pages and extract the named entities concurrently.
+     *
+     * @param urls
+     * @return The extractions in the same order of the urls, empty when a page is not fetched
+     */
+    public List<Extraction> extractUrls(Collection<URL> urls) {
+        final List<Callable<String>> sources = new ArrayList<>(urls.size());
+        for (URL url : urls) {
+            sources.add(() -> Textualization.text(url));
+        }
+        return run(sources);
+    }
+
+    /**
+     * Map a language code of the language detector to a model language.
+     *
+     * @param code ISO 639-3 or 639-1 code
+     * @return The ISO 639-1 code or null
+     */
+    public static String toModelLanguage(String code) {
+        if (null == code || code.isEmpty()) {
+            return null;
+        }
+        if (code.length() == 2) {
+            return code;
+        }
+        return MODEL_LANGUAGES.get(code);
+    }
+
+    private List<Extraction> run(List<Callable<String>> sources) {
+        final int size = sources.size();
+        final Extraction[] results = new Extraction[size];
+        final BlockingQueue<Document> prepared = new ArrayBlockingQueue<>(queueSize);
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final int workers = Math.max(1, Math.min(threads, size));
+        final ExecutorService executor = createExecutor(workers * 2);
+        try {
+            final AtomicInteger preparing = new AtomicInteger(workers);
+            final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                // Fetch, detect, split and tokenize
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        int i;
+                        while ((i = next.getAndIncrement()) < size && null == error.get()) {
+                            final Document document = prepare(sources.get(i).call());
+                            document.index = i;
+                            put(prepared, document, error);
+                        }
+                    } catch (Exception e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        if (preparing.decrementAndGet() == 0) {
+                            for (int n = 0; n < workers; n++) {
+                                put(prepared, Document.END, error);
+                            }
+                        }
+                    }
+                }, executor));
+            }
+            for (int w = 0; w < workers; w++) {
+                // Extract, or give up when a worker failed, the end marks may not be queued then
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        while (null == error.get()) {
+                            final Document document = prepared.poll(100L, TimeUnit.MILLISECONDS);
+                            if (document == Document.END) {
+                                break;
+                            }
+                            if (null != document) {
+                                results[document.index] = extract(document);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        error.compareAndSet(null, e);
+                    } catch (RuntimeException e) {
+                        error.compareAndSet(null, e);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[tasks.size()])).join();
+        } finally {
+            executor.shutdownNow();
+        }
+        if (null != error.get()) {
+            throw new CompletionException(error.get());
+        }
+        return Arrays.asList(results);
+    }
+
+    // Wait for a free slot of the queue, or give up when a worker failed
+    private static void put(BlockingQueue<Document> queue, Document document, AtomicReference<Throwable> error) {
+        try {
+            while (!queue.offer(document, 100L, TimeUnit.MILLISECONDS)) {
+                if (null != error.get()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error.compareAndSet(null, e);
+        }
+    }
+
+    Document prepare(String text) {
+        if (null == text || text.isEmpty()) {
+            return new Document(null, Collections.emptyList());
+        }
+        final String language = toModelLanguage(languageDetector.apply(text));
+        if (null == language) {
+            return new Document(null, Collections.emptyList());
+        }
+        final SentenceDetector detector = sentenceDetectors.apply(language);
+        final Tokenizer tokenizer = tokenizers.apply(language);
+        final String[] sentences = detector.sentDetect(text);
+        final List<String[]> tokens = new ArrayList<>(sentences.length);
+        for (String sentence : sentences) {
+            final String[] words = tokenizer.tokenize(sentence);
+            if (words.length > 0) {
+                tokens.add(words);
+            }
+        }
+        return new Document(language, tokens);
+    }
+
+    Extraction extract(Document document) {
+        final Extraction extraction = new Extraction();
+        if (null == document.language || document.sentences.isEmpty()) {
+            return extraction;
+        }
+        final TokenNameFinder[] finders = getNameFinders(document.language);
+        if (finders.length == 0) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(String.format("Not found a OpenNLP '%s' model.", OpenNLP.getModelName(document.language, null)));
+            }
+            return extraction;
+        }
+        try {
+            final Span[][] spans = new Span[finders.length][];
+            for (int n = 0; n < document.sentences.size(); n++) {
+                final String[] sentence = document.sentences.get(n);
+                for (int i = 0; i < finders.length; i++) {
+                    spans[i] = finders[i].find(sentence);
+                }
+                OpenNLP.extract(OpenNLP.mergeSpans(sentence.length, spans), sentence, n, extraction);
+            }
+        } finally {
+            // The adaptive data is cleared at the end of document
+            for (TokenNameFinder finder : finders) {
+                finder.clearAdaptiveData();
+            }
+        }
+        return extraction;
+    }
+
+    // The pattern finders first, the models of the types covered by them are skipped
+    private TokenNameFinder[] getNameFinders(String language) {
+        if (!OpenNLP.hasFinder()) {
+            return new TokenNameFinder[0];
+        }
+        return OpenNLP.getNameFinders(language, types);
+    }
+
+    // The Japanese and Chinese texts are split by the punctuations, others by line feeds
+    static SentenceDetector defaultSentenceDetector(String language) {
+        return SentenceDetectorFactory.isCjk(language) ? CjkSentenceDetector.INSTANCE : LineSentenceDetector.INSTANCE;
+    }
+
+    static ExecutorService createExecutor(int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "extraction-pipeline-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Tokenized sentences of a text.
+     */
+    static class Document {
+        static final Document END = new Document(null, Collections.emptyList());
+
+        final String language;
+        final List<String[]> sentences;
+        int index;
+
+        Document(String language, List<String[]> sentences) {
+            this.language = language;
+            this.sentences = sentences;
+        }
+    }
+
+    /**
+     * Split the text into sentences by line feeds.
+     */
+    static class LineSentenceDetector implements SentenceDetector {
+        static final LineSentenceDetector INSTANCE = new LineSentenceDetector();
+
+        @Override
+        public String[] sentDetect(String s) {
+            return Span.spansToStrings(sentPosDetect(s), s);
+        }
+
+        @Override
+        public Span[] sentPosDetect(String s) {
+            final List<Span> spans = new ArrayList<>();
+            int start = 0;
+            final int length = s.length();
+            while (start < length) {
+                int end = s.indexOf('\n', start);
+                if (end < 0) {
+                    end = length;
+                }
+                final Span span = new Span(start, end).trim(s);
+                if (span.length() > 0) {
+                    spans.add(span);
+                }
+                start = end + 1;
+            }
+            return spans.toArray(new Span[spans.size()]);
+        }
+    }
+}
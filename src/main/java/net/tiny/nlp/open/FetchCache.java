@@ -0,0 +1,298 @@
+package net.tiny.nlp.open;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Persistent cache of fetched pages for conditional HTTP requests.
+ *
+ * A page is stored as a body file and a meta file named by the SHA-1 of its URL.
+ * The meta file keeps the ETag and Last-Modified headers, which are sent back
+ * as If-None-Match and If-Modified-Since, a '304 Not Modified' response is
+ * served from the memory-mapped body file.
+ * The reads, the writes and the eviction are serialized, an entry maps its body
+ * when it is obtained, so the validators and the body always belong to the same
+ * response even if the entry is replaced or evicted during the request.
+ * The entries older than max age are removed, then the least recently used
+ * entries are removed until the total size is under max bytes.
+ *
+ */
+public class FetchCache {
+
+    private static final Logger LOGGER = Logger.getLogger(FetchCache.class.getName());
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024L * 1024L; //256M
+    public static final long DEFAULT_MAX_AGE = 7L * 24L * 60L * 60L * 1000L; //7 days
+
+    static final String BODY = ".body";
+    static final String META = ".meta";
+    private static final String URL_KEY = "url";
+    private static final String ETAG_KEY = "etag";
+    private static final String LAST_MODIFIED_KEY = "last-modified";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxAge;
+    private final AtomicLong size = new AtomicLong();
+
+    public FetchCache(Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE);
+    }
+
+    public FetchCache(Path directory, long maxBytes, long maxAge) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+        for (Path body : list(BODY)) {
+            size.addAndGet(Files.size(body));
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Total bytes of the cached bodies.
+     *
+     * @return
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Obtain the cached entry of the url.
+     *
+     * @param url
+     * @return The entry or null when the url is not cached
+     */
+    public synchronized Entry get(URL url) {
+        final String key = key(url);
+        final Path meta = directory.resolve(key + META);
+        final Path body = directory.resolve(key + BODY);
+        if (!Files.exists(meta) || !Files.exists(body)) {
+            return null;
+        }
+        final Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(meta)) {
+            props.load(in);
+            if (!url.toExternalForm().equals(props.getProperty(URL_KEY))) {
+                return null;
+            }
+            return new Entry(body, map(body), props.getProperty(ETAG_KEY), props.getProperty(LAST_MODIFIED_KEY));
+        } catch (IOException e) {
+            LOGGER.warning(String.format("Cache '%s' error : %s", url, e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Store the page when the response has a validator.
+     *
+     * @param url
+     * @param body
+     * @param etag The ETag header
+     * @param lastModified The Last-Modified header
+     * @return True when the page was stored
+     * @throws IOException
+     */
+    public synchronized boolean put(URL url, byte[] body, String etag, String lastModified) throws IOException {
+        if (null == etag && null == lastModified) {
+            return false;
+        }
+        final String key = key(url);
+        final Path bodyFile = directory.resolve(key + BODY);
+        final long old = Files.exists(bodyFile) ? Files.size(bodyFile) : 0L;
+        final Path temp = Files.createTempFile(directory, key, ".tmp");
+        Files.write(temp, body);
+        Files.move(temp, bodyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        final Properties props = new Properties();
+        props.setProperty(URL_KEY, url.toExternalForm());
+        if (null != etag) {
+            props.setProperty(ETAG_KEY, etag);
+        }
+        if (null != lastModified) {
+            props.setProperty(LAST_MODIFIED_KEY, lastModified);
+        }
+        final Path metaTemp = Files.createTempFile(directory, key, ".tmp");
+        try (OutputStream out = Files.newOutputStream(metaTemp)) {
+            props.store(out, null);
+        }
+        Files.move(metaTemp, directory.resolve(key + META), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (size.addAndGet(body.length - old) > maxBytes) {
+            evict();
+        }
+        return true;
+    }
+
+    /**
+     * Remove the entries older than max age, and the least recently used entries
+     * until the total size is under max bytes.
+     *
+     * @throws IOException
+     */
+    public synchronized void evict() throws IOException {
+        final List<Path> bodies = list(BODY);
+        bodies.sort((a, b) -> lastModified(a).compareTo(lastModified(b)));
+        final long expired = System.currentTimeMillis() - maxAge;
+        long total = 0L;
+        for (Path body : bodies) {
+            total += Files.size(body);
+        }
+        for (Path body : bodies) {
+            if (total <= maxBytes && lastModified(body).toMillis() >= expired) {
+                continue;
+            }
+            final long length = Files.size(body);
+            final String name = body.getFileName().toString();
+            final String key = name.substring(0, name.length() - BODY.length());
+            Files.deleteIfExists(directory.resolve(key + META));
+            Files.deleteIfExists(body);
+            total -= length;
+        }
+        size.set(total);
+    }
+
+    public synchronized void clear() throws IOException {
+        for (Path file : list("")) {
+            Files.deleteIfExists(file);
+        }
+        size.set(0L);
+    }
+
+    private List<Path> list(String suffix) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + suffix)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String key(URL url) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            final byte[] hash = digest.digest(url.toExternalForm().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A cached page.
+     */
+    public static class Entry {
+        private final Path body;
+        private final ByteBuffer buffer;
+        private final String etag;
+        private final String lastModified;
+
+        Entry(Path body, ByteBuffer buffer, String etag, String lastModified) {
+            this.body = body;
+            this.buffer = buffer;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * The body mapped when the entry was obtained, the last access time is updated for eviction.
+         *
+         * @return The read only body
+         * @throws IOException
+         */
+        public ByteBuffer map() throws IOException {
+            try {
+                Files.setLastModifiedTime(body, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (NoSuchFileException e) {
+                // Replaced or evicted, the mapped body is still valid
+            }
+            return buffer.duplicate();
+        }
+
+        public InputStream openStream() throws IOException {
+            return new ByteBufferInputStream(map());
+        }
+    }
+
+    static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
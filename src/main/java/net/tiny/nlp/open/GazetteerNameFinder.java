@@ -0,0 +1,321 @@
+package net.tiny.nlp.open;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.util.Span;
+
+/**
+ * Dictionary name finder by an Aho-Corasick automaton.
+ *
+ * The entries of the dictionaries are compiled into an automaton of primitive
+ * int arrays, the tokens of a sentence are scanned once and all entries on the
+ * token boundaries are found. An entry of many tokens is written with blanks.
+ * The leftmost longest entries are returned with probability 1.0.
+ * The finder is immutable and thread safe, it can be appended to a
+ * {@link NameFinderFactory} to be merged with the statistical models.
+ *
+ */
+public class GazetteerNameFinder implements TokenNameFinder {
+
+    private static final int ROOT = 0;
+    private static final char SEPARATOR = ' ';
+
+    private final String[] types;
+    // Sorted edges of a state are edgeChars[edges[s]..edges[s+1]]
+    private final int[] edges;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] fail;
+    // Char length and type of the entry ending at a state, or 0 and -1
+    private final int[] outLengths;
+    private final int[] outTypes;
+    // Next state with an entry in the failure chain, or -1
+    private final int[] outLinks;
+    private final boolean mergeAdjacent;
+    private final int size;
+
+    private GazetteerNameFinder(Builder builder) {
+        this.types = builder.types.toArray(new String[builder.types.size()]);
+        this.mergeAdjacent = builder.mergeAdjacent;
+        this.size = builder.size;
+        final int states = builder.children.size();
+        this.fail = new int[states];
+        this.outLinks = new int[states];
+        this.outLengths = Arrays.copyOf(builder.lengths.stream().mapToInt(Integer::intValue).toArray(), states);
+        this.outTypes = builder.entryTypes.stream().mapToInt(Integer::intValue).toArray();
+        // Flatten the edges
+        this.edges = new int[states + 1];
+        int count = 0;
+        for (Map<Character, Integer> next : builder.children) {
+            count += next.size();
+        }
+        this.edgeChars = new char[count];
+        this.edgeTargets = new int[count];
+        int pos = 0;
+        for (int s = 0; s < states; s++) {
+            edges[s] = pos;
+            final Character[] chars = builder.children.get(s).keySet().toArray(new Character[0]);
+            Arrays.sort(chars);
+            for (Character c : chars) {
+                edgeChars[pos] = c;
+                edgeTargets[pos] = builder.children.get(s).get(c);
+                pos++;
+            }
+        }
+        edges[states] = pos;
+        // Failure and output links, breadth first
+        Arrays.fill(outLinks, -1);
+        final ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int e = edges[ROOT]; e < edges[ROOT + 1]; e++) {
+            fail[edgeTargets[e]] = ROOT;
+            queue.add(edgeTargets[e]);
+        }
+        while (!queue.isEmpty()) {
+            final int s = queue.poll();
+            for (int e = edges[s]; e < edges[s + 1]; e++) {
+                final int t = edgeTargets[e];
+                int f = fail[s];
+                int next;
+                while ((next = next(f, edgeChars[e])) < 0 && f != ROOT) {
+                    f = fail[f];
+                }
+                fail[t] = (next >= 0 && next != t) ? next : ROOT;
+                outLinks[t] = outLengths[fail[t]] > 0 ? fail[t] : outLinks[fail[t]];
+                queue.add(t);
+            }
+        }
+    }
+
+    /**
+     * @return Number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    public String[] getTypes() {
+        return types.clone();
+    }
+
+    @Override
+    public Span[] find(String[] tokens) {
+        if (tokens.length == 0) {
+            return new Span[0];
+        }
+        // Char offsets of the tokens joined by one blank
+        final int[] starts = new int[tokens.length];
+        // The longest entry starting at a token: end token and type
+        final int[] ends = new int[tokens.length];
+        final int[] found = new int[tokens.length];
+        int offset = 0;
+        int state = ROOT;
+        for (int t = 0; t < tokens.length; t++) {
+            if (t > 0) {
+                state = step(state, SEPARATOR);
+                offset++;
+            }
+            starts[t] = offset;
+            final String token = tokens[t];
+            for (int i = 0; i < token.length(); i++) {
+                state = step(state, token.charAt(i));
+            }
+            offset += token.length();
+            // The entries ending at this token
+            for (int s = outLengths[state] > 0 ? state : outLinks[state]; s >= 0; s = outLinks[s]) {
+                final int start = offset - outLengths[s];
+                final int first = Arrays.binarySearch(starts, 0, t + 1, start);
+                if (first >= 0 && t + 1 > ends[first]) {
+                    ends[first] = t + 1;
+                    found[first] = outTypes[s];
+                }
+            }
+        }
+        final List<Span> spans = new ArrayList<>();
+        for (int t = 0; t < tokens.length;) {
+            if (ends[t] > t) {
+                final String type = types[found[t]];
+                final int last = spans.size() - 1;
+                if (mergeAdjacent && last >= 0 && spans.get(last).getEnd() == t && type.equals(spans.get(last).getType())) {
+                    spans.set(last, new Span(spans.get(last).getStart(), ends[t], type, 1d));
+                } else {
+                    spans.add(new Span(t, ends[t], type, 1d));
+                }
+                t = ends[t];
+            } else {
+                t++;
+            }
+        }
+        return spans.toArray(new Span[spans.size()]);
+    }
+
+    @Override
+    public void clearAdaptiveData() {
+        // No adaptive data
+    }
+
+    private int step(int state, char c) {
+        int next;
+        while ((next = next(state, c)) < 0 && state != ROOT) {
+            state = fail[state];
+        }
+        return next < 0 ? ROOT : next;
+    }
+
+    private int next(int state, char c) {
+        int low = edges[state];
+        int high = edges[state + 1] - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final char m = edgeChars[mid];
+            if (m < c) {
+                low = mid + 1;
+            } else if (m > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collect the entries of the dictionaries.
+     */
+    public static class Builder {
+        private final List<String> types = new ArrayList<>();
+        private final List<Map<Character, Integer>> children = new ArrayList<>();
+        private final List<Integer> lengths = new ArrayList<>();
+        private final List<Integer> entryTypes = new ArrayList<>();
+        private boolean mergeAdjacent = false;
+        private int size = 0;
+
+        public Builder() {
+            newState();
+        }
+
+        /**
+         * Add an entry, the first type of a duplicated entry is kept.
+         *
+         * @param type
+         * @param entry The entry, the tokens are separated by blanks
+         * @return
+         */
+        public Builder add(String type, String entry) {
+            final String normalized = normalize(entry);
+            if (normalized.isEmpty()) {
+                return this;
+            }
+            int state = ROOT;
+            for (int i = 0; i < normalized.length(); i++) {
+                final char c = normalized.charAt(i);
+                Integer next = children.get(state).get(c);
+                if (null == next) {
+                    next = newState();
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            if (lengths.get(state) == 0) {
+                int typeId = types.indexOf(type);
+                if (typeId < 0) {
+                    typeId = types.size();
+                    types.add(type);
+                }
+                lengths.set(state, normalized.length());
+                entryTypes.set(state, typeId);
+                size++;
+            }
+            return this;
+        }
+
+        public Builder add(String type, Iterable<String> entries) {
+            for (String entry : entries) {
+                add(type, entry);
+            }
+            return this;
+        }
+
+        /**
+         * Add the entries of a dictionary of one entry per line, the empty lines
+         * and the lines starting with '#' are skipped.
+         *
+         * @param type
+         * @param resource The classpath resource
+         * @return
+         * @throws IOException
+         */
+        public Builder load(String type, String resource) throws IOException {
+            final URL url = Thread.currentThread().getContextClassLoader().getResource(resource);
+            if (null == url) {
+                throw new FileNotFoundException(resource);
+            }
+            return load(type, url);
+        }
+
+        public Builder load(String type, URL url) throws IOException {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.startsWith("#")) {
+                        add(type, line);
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Merge the adjacent entries of the same type into one span,
+         * like a family name followed by a first name.
+         *
+         * @param merge
+         * @return
+         */
+        public Builder mergeAdjacent(boolean merge) {
+            this.mergeAdjacent = merge;
+            return this;
+        }
+
+        public GazetteerNameFinder build() {
+            return new GazetteerNameFinder(this);
+        }
+
+        private int newState() {
+            children.add(new HashMap<>());
+            lengths.add(0);
+            entryTypes.add(-1);
+            return children.size() - 1;
+        }
+
+        // Trim and collapse the blanks to one separator
+        static String normalize(String entry) {
+            final StringBuilder sb = new StringBuilder(entry.length());
+            boolean blank = false;
+            for (int i = 0; i < entry.length(); i++) {
+                final char c = entry.charAt(i);
+                if (Character.isWhitespace(c) || c == '　') {
+                    blank = sb.length() > 0;
+                } else {
+                    if (blank) {
+                        sb.append(SEPARATOR);
+                        blank = false;
+                    }
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
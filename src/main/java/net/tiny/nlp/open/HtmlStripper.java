@@ -0,0 +1,277 @@
+package net.tiny.nlp.open;
+
+import java.io.IOException;
+
+/**
+ * Single pass HTML to plain text state machine.
+ *
+ * The script and style elements and all tags are removed, the continuous blanks
+ * are collapsed to one blank and the empty lines are removed in one scan.
+ * The characters are pushed by {@link #append(char)}, the plain text is written
+ * to the output as soon as it is known, only the current tag and the leading
+ * blanks of the current line are buffered.
+ *
+ */
+final class HtmlStripper {
+
+    // Max buffered length of a tag, a skipped element and a closing tag
+    static final int MAX_TAG = 4096;
+    static final int MAX_SKIP = 65536;
+    private static final int MAX_CLOSE_TAG = 64;
+
+    private static final int TEXT = 0;
+    private static final int TAG = 1;
+    private static final int SKIP = 2;
+
+    private final Appendable out;
+    private int state = TEXT;
+    // Content of current tag
+    private final StringBuilder tag = new StringBuilder();
+    private boolean tagOverflow = false;
+    // Name of the skipped element ('script' or 'style')
+    private String skipName;
+    // Content of the skipped element, replayed when the element is not closed
+    private final StringBuilder skipped = new StringBuilder();
+    private boolean skipOverflow = false;
+    // Candidate closing tag of the skipped element
+    private final StringBuilder closeTag = new StringBuilder();
+    private boolean inCloseTag = false;
+    // Leading blanks of current line
+    private final StringBuilder pending = new StringBuilder();
+    private boolean lineText = false;
+    private boolean lastBlank = false;
+
+    HtmlStripper(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * Strip all markups of the HTML.
+     *
+     * @param html
+     * @return The plain text
+     */
+    static String strip(CharSequence html) {
+        final StringBuilder text = new StringBuilder(html.length() / 2);
+        final HtmlStripper stripper = new HtmlStripper(text);
+        try {
+            stripper.append(html, 0, html.length());
+            stripper.finish();
+        } catch (IOException e) {
+            // StringBuilder never throws
+        }
+        return text.toString();
+    }
+
+    HtmlStripper append(CharSequence html, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            append(html.charAt(i));
+        }
+        return this;
+    }
+
+    HtmlStripper append(char[] buffer, int offset, int length) throws IOException {
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            append(buffer[i]);
+        }
+        return this;
+    }
+
+    HtmlStripper append(char c) throws IOException {
+        switch (state) {
+        case TEXT:
+            if (c == '<') {
+                state = TAG;
+                tag.setLength(0);
+                tagOverflow = false;
+            } else {
+                text(c);
+            }
+            break;
+        case TAG:
+            if (c == '>') {
+                closeTag();
+            } else if (tag.length() < MAX_TAG) {
+                tag.append(c);
+            } else {
+                tagOverflow = true;
+            }
+            break;
+        default:
+            skip(c);
+            break;
+        }
+        return this;
+    }
+
+    /**
+     * Flush the buffered text at the end of document.
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        if (state == TAG) {
+            // Not a tag without '>'
+            state = TEXT;
+            text('<');
+            for (int i = 0; i < tag.length(); i++) {
+                text(tag.charAt(i));
+            }
+        } else if (state == SKIP) {
+            // Not closed element, the content is parsed as text
+            state = TEXT;
+            if (!skipOverflow) {
+                final String content = skipped.toString();
+                skipped.setLength(0);
+                for (int i = 0; i < content.length(); i++) {
+                    append(content.charAt(i));
+                }
+                finish();
+                return;
+            }
+        }
+        if (!lineText) {
+            // Last line without line feed
+            out.append(pending);
+            pending.setLength(0);
+        }
+    }
+
+    private void closeTag() throws IOException {
+        state = TEXT;
+        if (tag.length() == 0) {
+            // '<>' is not a tag
+            text('<');
+            text('>');
+            return;
+        }
+        if (!tagOverflow) {
+            skipName = elementName(tag);
+            if (null != skipName) {
+                state = SKIP;
+                skipped.setLength(0);
+                skipOverflow = false;
+                inCloseTag = false;
+            }
+        }
+    }
+
+    private void skip(char c) {
+        if (skipped.length() < MAX_SKIP) {
+            skipped.append(c);
+        } else {
+            skipOverflow = true;
+        }
+        if (c == '<') {
+            inCloseTag = true;
+            closeTag.setLength(0);
+        } else if (inCloseTag) {
+            if (c == '>') {
+                inCloseTag = false;
+                if (isCloseTag(closeTag, skipName)) {
+                    state = TEXT;
+                    skipped.setLength(0);
+                }
+            } else if (closeTag.length() < MAX_CLOSE_TAG) {
+                closeTag.append(c);
+            } else {
+                inCloseTag = false;
+            }
+        }
+    }
+
+    private void text(char c) throws IOException {
+        if (c == ' ') {
+            if (lastBlank) {
+                return;
+            }
+            lastBlank = true;
+            blank(c);
+            return;
+        }
+        lastBlank = false;
+        if (c == '\n') {
+            if (lineText) {
+                out.append(c);
+            } else {
+                // Remove an empty line
+                pending.setLength(0);
+            }
+            lineText = false;
+        } else if (isBlank(c)) {
+            blank(c);
+        } else {
+            if (!lineText) {
+                out.append(pending);
+                pending.setLength(0);
+                lineText = true;
+            }
+            out.append(c);
+        }
+    }
+
+    private void blank(char c) throws IOException {
+        if (lineText) {
+            out.append(c);
+        } else {
+            pending.append(c);
+        }
+    }
+
+    // Same as the regular expression '\s'
+    static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // Returns 'script' or 'style' when the tag content is '\s*script[^>]*'
+    static String elementName(CharSequence tag) {
+        int i = 0;
+        while (i < tag.length() && isBlank(tag.charAt(i))) {
+            i++;
+        }
+        if (startsWithIgnoreCase(tag, i, "script")) {
+            return "script";
+        }
+        if (startsWithIgnoreCase(tag, i, "style")) {
+            return "style";
+        }
+        return null;
+    }
+
+    // The tag content is '\s*/\s*name\s*'
+    static boolean isCloseTag(CharSequence tag, String name) {
+        int i = 0;
+        final int length = tag.length();
+        while (i < length && isBlank(tag.charAt(i))) {
+            i++;
+        }
+        if (i >= length || tag.charAt(i) != '/') {
+            return false;
+        }
+        i++;
+        while (i < length && isBlank(tag.charAt(i))) {
+            i++;
+        }
+        if (!startsWithIgnoreCase(tag, i, name)) {
+            return false;
+        }
+        i += name.length();
+        while (i < length && isBlank(tag.charAt(i))) {
+            i++;
+        }
+        return i == length;
+    }
+
+    private static boolean startsWithIgnoreCase(CharSequence value, int offset, String prefix) {
+        if (value.length() - offset < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (Character.toLowerCase(value.charAt(offset + i)) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,361 @@
+package net.tiny.nlp.open;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTTP page fetcher for crawl then extract jobs.
+ *
+ * The connections are kept alive and reused by the JDK connection cache,
+ * the gzip and deflate encoded responses are decoded, and the number of
+ * concurrent requests to one host is bounded. The asynchronous requests
+ * over the bound of a host wait in the queue of the host, a finishing request
+ * submits the next one to the fetcher executor, so no executor thread is parked
+ * by a busy host while the requests to other hosts are waiting.
+ * The idle hosts are removed.
+ * With a {@link FetchCache} the cached pages are requested conditionally
+ * and a '304 Not Modified' response is served from the cache.
+ * The body over the max body size is truncated and not read.
+ *
+ */
+public class HttpFetcher {
+
+    private static final Logger LOGGER = Logger.getLogger(HttpFetcher.class.getName());
+
+    public static final int DEFAULT_MAX_PER_HOST = 4;
+    public static final int DEFAULT_THREADS = 16;
+    public static final int DEFAULT_MAX_BODY_SIZE = 8 * 1024 * 1024; //8M
+    static final int BUFFER_SIZE = 8192*2; //16K
+
+    /**
+     * Read a response body.
+     *
+     * @param <T> The result type
+     */
+    @FunctionalInterface
+    public interface Handler<T> {
+        T handle(InputStream body, int contentLength) throws IOException;
+    }
+
+    private final String userAgent;
+    private final int maxPerHost;
+    private final Executor executor;
+    private final FetchCache cache;
+    private volatile int maxBodySize = DEFAULT_MAX_BODY_SIZE;
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+
+    public HttpFetcher() {
+        this(Textualization.DEFAULT_USER_AGENT, DEFAULT_MAX_PER_HOST, createExecutor(DEFAULT_THREADS));
+    }
+
+    public HttpFetcher(String userAgent, int maxPerHost, Executor executor) {
+        this(userAgent, maxPerHost, executor, null);
+    }
+
+    public HttpFetcher(String userAgent, int maxPerHost, Executor executor, FetchCache cache) {
+        if (maxPerHost < 1) {
+            throw new IllegalArgumentException("Max connections per host must be positive.");
+        }
+        this.userAgent = userAgent;
+        this.maxPerHost = maxPerHost;
+        this.executor = executor;
+        this.cache = cache;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public int getMaxPerHost() {
+        return maxPerHost;
+    }
+
+    public FetchCache getCache() {
+        return cache;
+    }
+
+    public int getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public void setMaxBodySize(int maxBodySize) {
+        if (maxBodySize < 0) {
+            throw new IllegalArgumentException("Max body size must not be negative.");
+        }
+        this.maxBodySize = maxBodySize;
+    }
+
+    public byte[] fetch(URL url) throws IOException {
+        return fetch(url, userAgent);
+    }
+
+    public byte[] fetch(URL url, String agent) throws IOException {
+        return fetch(url, agent, HttpFetcher::readBody);
+    }
+
+    /**
+     * Request the page and read the decoded body by the handler.
+     * The calling thread waits while the host has max concurrent requests.
+     *
+     * @param url
+     * @param agent The User-Agent header
+     * @param handler
+     * @return The result of handler
+     * @throws IOException
+     */
+    public <T> T fetch(URL url, String agent, Handler<T> handler) throws IOException {
+        final String key = hostKey(url);
+        final CompletableFuture<Void> turn = new CompletableFuture<>();
+        // The slot is released when the waiting caller gave up
+        if (!acquire(key, () -> {
+            if (!turn.complete(null)) {
+                release(key);
+            }
+        })) {
+            try {
+                turn.get();
+            } catch (InterruptedException e) {
+                if (!turn.cancel(false)) {
+                    release(key);
+                }
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted : " + url);
+            } catch (ExecutionException e) {
+                // Never
+                throw new IOException(e.getCause());
+            }
+        }
+        try {
+            return request(url, agent, handler);
+        } finally {
+            release(key);
+        }
+    }
+
+    public CompletableFuture<byte[]> fetchAsync(URL url) {
+        return fetchAsync(url, HttpFetcher::readBody);
+    }
+
+    public <T> CompletableFuture<T> fetchAsync(URL url, Handler<T> handler) {
+        final String key = hostKey(url);
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Runnable task = () -> {
+            T result = null;
+            Throwable error = null;
+            try {
+                result = request(url, userAgent, handler);
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                release(key);
+            }
+            if (null == error) {
+                future.complete(result);
+            } else {
+                future.completeExceptionally(error);
+            }
+        };
+        if (acquire(key, task)) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                release(key);
+                future.completeExceptionally(e);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Fetch many pages asynchronously.
+     *
+     * @param urls
+     * @return The futures in the same order of the urls
+     */
+    public List<CompletableFuture<byte[]>> fetchAll(Collection<URL> urls) {
+        final List<CompletableFuture<byte[]>> futures = new ArrayList<>(urls.size());
+        for (URL url : urls) {
+            futures.add(fetchAsync(url));
+        }
+        return futures;
+    }
+
+    protected <T> T request(URL url, String agent, Handler<T> handler) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("User-Agent", agent);
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        connection.setInstanceFollowRedirects(true);
+        final FetchCache.Entry cached = (null != cache) ? cache.get(url) : null;
+        if (null != cached) {
+            if (null != cached.getETag()) {
+                connection.setRequestProperty("If-None-Match", cached.getETag());
+            }
+            if (null != cached.getLastModified()) {
+                connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
+            }
+        }
+        final int stat = connection.getResponseCode();
+        if (stat == HttpURLConnection.HTTP_NOT_MODIFIED && null != cached) {
+            discard(connection);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(String.format("'%s' : [%d] cached", url.toString(), stat));
+            }
+            final ByteBuffer body = cached.map();
+            return handler.handle(new FetchCache.ByteBufferInputStream(body), body.remaining());
+        }
+        if (stat != HttpURLConnection.HTTP_OK) {
+            //Warning
+            LOGGER.warning(String.format("%s : %d", url.toString(), stat));
+            discard(connection);
+            throw new IOException("HTTP error : " + stat);
+        }
+        final String encoding = connection.getContentEncoding();
+        // Closing the fully read stream returns the connection to the keep-alive cache
+        final int max = maxBodySize;
+        try (BodyReader.LimitedInputStream in = BodyReader.limit(
+                decode(new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE), encoding), max)) {
+            final int declared = isEncoded(encoding) ? -1 : connection.getContentLength();
+            final int length = Math.min(declared, max);
+            final String etag = connection.getHeaderField("ETag");
+            final String lastModified = connection.getHeaderField("Last-Modified");
+            final T result;
+            if (null != cache && (null != etag || null != lastModified)) {
+                final byte[] body = readBody(in, length);
+                if (declared <= max && !in.isTruncated()) {
+                    cache.put(url, body, etag, lastModified);
+                }
+                result = handler.handle(new ByteArrayInputStream(body), body.length);
+            } else {
+                result = handler.handle(in, length);
+            }
+            if (declared > max || in.isTruncated()) {
+                LOGGER.warning(String.format("'%s' : truncated at %d bytes", url.toString(), max));
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine(String.format("'%s' : [%d] %s", url.toString(), stat, encoding));
+            }
+            return result;
+        }
+    }
+
+    static InputStream decode(InputStream in, String encoding) throws IOException {
+        if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            return new InflaterInputStream(in);
+        }
+        return in;
+    }
+
+    private static boolean isEncoded(String encoding) {
+        return null != encoding && !encoding.isEmpty() && !"identity".equalsIgnoreCase(encoding);
+    }
+
+    // Read and close the error body so that the connection can be reused
+    private static void discard(HttpURLConnection connection) {
+        try (InputStream err = connection.getErrorStream()) {
+            if (null != err) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                while (err.read(buffer) > 0)
+                    ;
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+
+    static byte[] readBody(InputStream in, int contentLength) throws IOException {
+        return BodyReader.read(in, contentLength, Integer.MAX_VALUE);
+    }
+
+    // Take a slot of the host, or queue the task to run when a slot is handed over
+    private boolean acquire(String key, Runnable waiting) {
+        while (true) {
+            final Host host = hosts.computeIfAbsent(key, k -> new Host());
+            synchronized (host) {
+                if (host.removed) {
+                    // Removed as idle by another thread
+                    continue;
+                }
+                if (host.running < maxPerHost) {
+                    host.running++;
+                    return true;
+                }
+                host.waiting.add(waiting);
+                return false;
+            }
+        }
+    }
+
+    // Hand the slot over to the next waiting request, or remove the idle host
+    private void release(String key) {
+        final Host host = hosts.get(key);
+        final Runnable next;
+        synchronized (host) {
+            next = host.waiting.poll();
+            if (null == next) {
+                if (--host.running == 0) {
+                    host.removed = true;
+                    hosts.remove(key, host);
+                }
+                return;
+            }
+        }
+        try {
+            executor.execute(next);
+        } catch (RejectedExecutionException e) {
+            next.run();
+        }
+    }
+
+    /**
+     * @return Number of the hosts with running or waiting requests
+     */
+    int getActiveHosts() {
+        return hosts.size();
+    }
+
+    private static String hostKey(URL url) {
+        return url.getProtocol() + "://" + url.getHost() + ":" + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+    }
+
+    // The running requests and the waiting requests of a host
+    private static final class Host {
+        final Queue<Runnable> waiting = new ArrayDeque<>();
+        int running;
+        boolean removed;
+    }
+
+    static ExecutorService createExecutor(int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "http-fetcher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
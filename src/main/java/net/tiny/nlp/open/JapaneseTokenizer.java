@@ -0,0 +1,155 @@
+package net.tiny.nlp.open;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.util.Span;
+
+/**
+ * Longest match tokenizer of unsegmented Japanese text.
+ *
+ * The dictionary words (person names) in Kanji and Katakana are matched by a
+ * {@link DoubleArrayTrie} or a {@link MappedDictionary}, the other chars are split at the changes of char class
+ * (Kanji, Hiragana, Katakana, digit, Latin). The particles and honorifics at the
+ * start of a Hiragana run are split off, each punctuation is a token.
+ * The tokenizer is stateless and thread safe.
+ *
+ */
+public class JapaneseTokenizer implements Tokenizer {
+
+    // Char classes
+    static final int BLANK = 0;
+    static final int KANJI = 1;
+    static final int HIRAGANA = 2;
+    static final int KATAKANA = 3;
+    static final int DIGIT = 4;
+    static final int LATIN = 5;
+    static final int OTHER = 6;
+
+    // Min length of a dictionary word, a single Kanji is left to the char class run
+    static final int MIN_WORD = 2;
+
+    static final String[] FUNCTION_WORDS = {
+        "さん", "さま", "くん", "ちゃん", "たち",
+        "は", "が", "の", "を", "に", "へ", "と", "で", "も",
+        "から", "まで", "より", "として", "による", "において", "について", "など",
+        "です", "でした", "でしょう"
+    };
+    private static final DoubleArrayTrie PARTICLES = DoubleArrayTrie.build(Arrays.asList(FUNCTION_WORDS));
+
+    private final WordDictionary dictionary;
+
+    public JapaneseTokenizer(WordDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Create the tokenizer of the dictionaries in the classpath.
+     *
+     * @param resources The dictionary resources, like 'ja-family-name.dic'
+     * @return
+     * @throws IOException
+     */
+    public static JapaneseTokenizer load(String... resources) throws IOException {
+        return new JapaneseTokenizer(DoubleArrayTrie.load(resources));
+    }
+
+    public WordDictionary getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public String[] tokenize(String s) {
+        return Span.spansToStrings(tokenizePos(s), s);
+    }
+
+    @Override
+    public Span[] tokenizePos(String s) {
+        final List<Span> tokens = new ArrayList<>(s.length() / 2 + 1);
+        final int length = s.length();
+        int start = 0;
+        int i = 0;
+        while (i < length) {
+            final int type = charClass(s.charAt(i));
+            if (type == BLANK) {
+                add(tokens, start, i);
+                start = ++i;
+                continue;
+            }
+            // A dictionary word or a particle starts here
+            final int prev = (i > 0) ? charClass(s.charAt(i - 1)) : BLANK;
+            int word = 0;
+            if (type == KANJI) {
+                word = dictionary.longestMatch(s, i);
+            } else if (type == KATAKANA && prev != KATAKANA) {
+                word = dictionary.longestMatch(s, i);
+                if (i + word < length && charClass(s.charAt(i + word)) == KATAKANA) {
+                    // A part of a longer Katakana word
+                    word = 0;
+                }
+            } else if (type == HIRAGANA && (start == i || prev != HIRAGANA)) {
+                word = PARTICLES.longestMatch(s, i);
+            }
+            if (type != HIRAGANA && word < MIN_WORD) {
+                word = 0;
+            }
+            if (word > 0) {
+                add(tokens, start, i);
+                add(tokens, i, i + word);
+                i += word;
+                start = i;
+                continue;
+            }
+            if (start < i && (type != prev || type == OTHER)) {
+                add(tokens, start, i);
+                start = i;
+            }
+            i++;
+        }
+        add(tokens, start, length);
+        return tokens.toArray(new Span[tokens.size()]);
+    }
+
+    private static void add(List<Span> tokens, int start, int end) {
+        if (start < end) {
+            tokens.add(new Span(start, end));
+        }
+    }
+
+    static int charClass(char c) {
+        if (c < 0x80) {
+            if (c >= '0' && c <= '9') {
+                return DIGIT;
+            }
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                return LATIN;
+            }
+            return Character.isWhitespace(c) ? BLANK : OTHER;
+        }
+        if (c >= 0x3041 && c <= 0x309F) {
+            return HIRAGANA;
+        }
+        if ((c >= 0x30A0 && c <= 0x30FF && c != 0x30FB) || (c >= 0x31F0 && c <= 0x31FF) || (c >= 0xFF66 && c <= 0xFF9F)) {
+            // 'ー' is Katakana, '・' is not
+            return KATAKANA;
+        }
+        if ((c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x3400 && c <= 0x4DBF) || (c >= 0xF900 && c <= 0xFAFF)
+                || c == 0x3005 || c == 0x3006 || Character.isSurrogate(c)) {
+            // '々', '〆' and the Kanji of supplementary planes
+            return KANJI;
+        }
+        if (c >= 0xFF10 && c <= 0xFF19) {
+            return DIGIT;
+        }
+        if ((c >= 0xFF21 && c <= 0xFF3A) || (c >= 0xFF41 && c <= 0xFF5A)) {
+            return LATIN;
+        }
+        if (c == 0x3000 || Character.isWhitespace(c)) {
+            return BLANK;
+        }
+        return Character.isLetter(c) ? LATIN : OTHER;
+    }
+}
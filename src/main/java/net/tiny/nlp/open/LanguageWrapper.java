@@ -3,22 +3,60 @@ package net.tiny.nlp.open;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import opennlp.tools.langdetect.Language;
-import opennlp.tools.langdetect.LanguageDetector;
-import opennlp.tools.langdetect.LanguageDetectorME;
+import opennlp.tools.langdetect.LanguageDetectorContextGenerator;
 import opennlp.tools.langdetect.LanguageDetectorModel;
+import opennlp.tools.ml.model.MaxentModel;
 
+/**
+ * Language detector with a striped LRU cache of the scores.
+ *
+ * The short texts (titles, names) recur constantly, the scores of all languages
+ * are cached by the normalized text, so any top K is served from the cache.
+ * Only the top K languages are selected, the others are not sorted.
+ * The best language of a text in an unambiguous script is decided by
+ * {@link ScriptClassifier} without the model.
+ *
+ */
 final class LanguageWrapper {
 
+    // Longer texts rarely recur and are not cached
+    static final int MAX_CACHED_LENGTH = 256;
+    // Max chars of a document sampled by the batch detection
+    static final int MAX_SAMPLE_LENGTH = 2048;
+    // Max batches of the batch detection in flight
+    static final int MAX_BATCHES = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+
     private final SortedMap<String, String> languages;
-    private final LanguageDetector detector;
+    private final MaxentModel model;
+    private final LanguageDetectorContextGenerator contextGenerator;
+    private final String[] outcomes;
+    private final Map<String, Integer> outcomeIndex = new HashMap<>();
+    private final ScoreCache cache;
+    private final int cacheSize;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
 
     LanguageWrapper() {
         this(new Properties());
@@ -39,16 +77,34 @@ final class LanguageWrapper {
             }
             this.languages = loadCodes(mapped);
             Collections.unmodifiableSortedMap(languages);
-            this.detector = createLanguageDetector(model);
+            final LanguageDetectorModel detector = createLanguageDetector(model);
+            this.model = detector.getMaxentModel();
+            this.contextGenerator = detector.getFactory().getContextGenerator();
+            this.outcomes = outcomes(this.model);
+            this.cacheSize = OpenNLP.getLanguageCacheSize(param);
+            this.cache = new ScoreCache(cacheSize);
         } catch (IOException e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
+    LanguageWrapper(SortedMap<String, String> languages, LanguageDetectorModel detector, int cacheSize) {
+        this.languages = languages;
+        this.model = detector.getMaxentModel();
+        this.contextGenerator = detector.getFactory().getContextGenerator();
+        this.outcomes = outcomes(this.model);
+        this.cacheSize = cacheSize;
+        this.cache = new ScoreCache(cacheSize);
+    }
+
     public int size() {
         return languages.size();
     }
 
+    MaxentModel getModel() {
+        return model;
+    }
+
     public String[] getCodes() {
         return languages.keySet().toArray(new String[languages.size()]);
     }
@@ -69,18 +125,313 @@ final class LanguageWrapper {
     public Language guestLanguage(String input) {
         if (null == input || input.isEmpty())
             return null;
-        return detector.predictLanguage(input);
+        final List<String> candidates = ScriptClassifier.classify(input);
+        if (null != candidates) {
+            if (candidates.size() == 1) {
+                if (languages.containsKey(candidates.get(0))) {
+                    return new Language(candidates.get(0), 1d);
+                }
+            } else {
+                final Language best = best(scores(input), candidates);
+                if (null != best) {
+                    return best;
+                }
+            }
+        }
+        return predictLanguages(input, 1)[0];
+    }
+
+    /**
+     * Detect the languages of many texts in parallel.
+     * The model is shared by the workers, a long document is sampled to
+     * its first {@link #MAX_SAMPLE_LENGTH} chars.
+     *
+     * @param texts The texts, a stream can be passed by <code>stream::iterator</code>
+     * @param executor
+     * @return The best languages in the same order of the texts, null for an empty text
+     */
+    public List<Language> guestLanguages(Iterable<String> texts, Executor executor) {
+        final List<Language> results = new ArrayList<>();
+        guestLanguages(texts, executor, results::addAll);
+        return results;
+    }
+
+    /**
+     * Detect the languages of a stream of texts in parallel.
+     * The texts are pulled in batches of {@link OpenNLP#BATCH_SIZE}, at most
+     * {@link #MAX_BATCHES} batches are in flight, so the memory is bounded and
+     * the results are delivered while the texts are still read.
+     *
+     * @param texts The texts, an unbounded stream can be passed by <code>stream::iterator</code>
+     * @param executor
+     * @param results Receives the languages of each batch in the order of the texts,
+     *  null for an empty text, on the calling thread
+     */
+    public void guestLanguages(Iterable<String> texts, Executor executor, Consumer<List<Language>> results) {
+        final Deque<CompletableFuture<List<Language>>> batches = new ArrayDeque<>();
+        final Iterator<String> it = texts.iterator();
+        while (it.hasNext()) {
+            final List<String> samples = new ArrayList<>(OpenNLP.BATCH_SIZE);
+            while (it.hasNext() && samples.size() < OpenNLP.BATCH_SIZE) {
+                samples.add(sample(it.next()));
+            }
+            batches.add(CompletableFuture.supplyAsync(() -> {
+                final Language[] langs = new Language[samples.size()];
+                for (int i = 0; i < langs.length; i++) {
+                    langs[i] = guestLanguage(samples.get(i));
+                }
+                return Arrays.asList(langs);
+            }, executor));
+            if (batches.size() >= MAX_BATCHES) {
+                results.accept(batches.poll().join());
+            }
+        }
+        while (!batches.isEmpty()) {
+            results.accept(batches.poll().join());
+        }
+    }
+
+    // The prefix of a long text, cut at a blank if possible
+    static String sample(String text) {
+        if (null == text || text.length() <= MAX_SAMPLE_LENGTH) {
+            return text;
+        }
+        int end = MAX_SAMPLE_LENGTH;
+        for (int i = end; i > MAX_SAMPLE_LENGTH / 2; i--) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                end = i;
+                break;
+            }
+        }
+        if (Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end);
     }
 
     public Language[] predictLanguages(String input) {
+        return predictLanguages(input, outcomes.length);
+    }
+
+    /**
+     * Predict the most probable languages.
+     *
+     * @param input
+     * @param k Max number of languages
+     * @return The top K languages in descending order of confidence
+     */
+    public Language[] predictLanguages(String input, int k) {
         if (null == input || input.isEmpty())
             return null;
-        return detector.predictLanguages(input);
+        return top(scores(input), Math.min(k, outcomes.length));
+    }
+
+    /**
+     * Score all languages of the text, the scores of short texts are cached.
+     *
+     * @param input
+     * @return The scores in the order of model outcomes
+     */
+    double[] scores(String input) {
+        // Both paths score the normalized text, the long texts skip the cache
+        if (cacheSize <= 0 || input.length() > MAX_CACHED_LENGTH) {
+            return model.eval(contextGenerator.getContext(normalize(input)));
+        }
+        final String key = normalize(input);
+        double[] scores = cache.get(key);
+        if (null != scores) {
+            hits.incrementAndGet();
+            return scores;
+        }
+        misses.incrementAndGet();
+        scores = model.eval(contextGenerator.getContext(key));
+        cache.put(key, scores);
+        return scores;
+    }
+
+    // The best language in the candidates
+    private Language best(double[] scores, List<String> candidates) {
+        int best = -1;
+        for (String code : candidates) {
+            final Integer i = outcomeIndex.get(code);
+            if (null != i && (best < 0 || scores[i] > scores[best])) {
+                best = i;
+            }
+        }
+        return best < 0 ? null : new Language(outcomes[best], scores[best]);
+    }
+
+    private Language[] top(double[] scores, int k) {
+        // Partial selection sort of the top K
+        final int[] best = new int[k];
+        int n = 0;
+        for (int i = 0; i < scores.length; i++) {
+            if (n == k && scores[i] <= scores[best[n - 1]]) {
+                continue;
+            }
+            int j = (n < k) ? n++ : n - 1;
+            while (j > 0 && scores[best[j - 1]] < scores[i]) {
+                best[j] = best[j - 1];
+                j--;
+            }
+            best[j] = i;
+        }
+        final Language[] langs = new Language[n];
+        for (int i = 0; i < n; i++) {
+            langs[i] = new Language(outcomes[best[i]], scores[best[i]]);
+        }
+        return langs;
+    }
+
+    public long getCacheHits() {
+        return hits.get();
+    }
+
+    public long getCacheMisses() {
+        return misses.get();
+    }
+
+    public double getCacheHitRate() {
+        final long total = hits.get() + misses.get();
+        return total == 0L ? 0d : (double) hits.get() / total;
     }
 
-    private LanguageDetector createLanguageDetector(URL resource) throws IOException {
-        LanguageDetectorModel model = new LanguageDetectorModel(resource.openStream());
-        return new LanguageDetectorME(model);
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    public void clearCache() {
+        cache.clear();
+        hits.set(0L);
+        misses.set(0L);
+    }
+
+    // Trim and collapse the continuous blanks, a normalized text is not copied
+    static String normalize(String text) {
+        if (isNormalized(text)) {
+            return text;
+        }
+        final StringBuilder sb = new StringBuilder(text.length());
+        boolean blank = false;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                blank = sb.length() > 0;
+            } else {
+                if (blank) {
+                    sb.append(' ');
+                    blank = false;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isNormalized(String text) {
+        final int last = text.length() - 1;
+        for (int i = 0; i <= last; i++) {
+            final char c = text.charAt(i);
+            if (Character.isWhitespace(c)
+                    && (c != ' ' || i == 0 || i == last || Character.isWhitespace(text.charAt(i + 1)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String[] outcomes(MaxentModel model) {
+        final String[] names = new String[model.getNumOutcomes()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = model.getOutcome(i);
+            outcomeIndex.put(names[i], i);
+        }
+        return names;
+    }
+
+    /**
+     * LRU cache split in stripes by the key hash, each stripe is locked alone
+     * so the concurrent detections rarely wait for each other.
+     * A small cache has one stripe and is an exact LRU.
+     */
+    static final class ScoreCache {
+        // Max stripes, and the min entries of a stripe
+        static final int MAX_STRIPES = 16;
+        static final int MIN_STRIPE_SIZE = 64;
+
+        private final Map<String, double[]>[] stripes;
+
+        @SuppressWarnings("unchecked")
+        ScoreCache(int capacity) {
+            int n = 1;
+            while (n < MAX_STRIPES && capacity >= (n << 1) * MIN_STRIPE_SIZE) {
+                n <<= 1;
+            }
+            stripes = new Map[n];
+            final int size = (capacity + n - 1) / n;
+            for (int i = 0; i < n; i++) {
+                stripes[i] = createStripe(size);
+            }
+        }
+
+        double[] get(String key) {
+            final Map<String, double[]> stripe = stripe(key);
+            synchronized (stripe) {
+                return stripe.get(key);
+            }
+        }
+
+        void put(String key, double[] scores) {
+            final Map<String, double[]> stripe = stripe(key);
+            synchronized (stripe) {
+                stripe.put(key, scores);
+            }
+        }
+
+        int size() {
+            int size = 0;
+            for (Map<String, double[]> stripe : stripes) {
+                synchronized (stripe) {
+                    size += stripe.size();
+                }
+            }
+            return size;
+        }
+
+        void clear() {
+            for (Map<String, double[]> stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.clear();
+                }
+            }
+        }
+
+        int stripes() {
+            return stripes.length;
+        }
+
+        private Map<String, double[]> stripe(String key) {
+            // Spread the hash, the stripe count is a power of two
+            final int h = key.hashCode();
+            return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+        }
+
+        private static Map<String, double[]> createStripe(final int capacity) {
+            return new LinkedHashMap<String, double[]>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+    }
+
+    private LanguageDetectorModel createLanguageDetector(URL resource) throws IOException {
+        try (InputStream in = resource.openStream()) {
+            return new LanguageDetectorModel(in);
+        }
     }
 
     private SortedMap<String, String> loadCodes(URL resource) throws IOException {
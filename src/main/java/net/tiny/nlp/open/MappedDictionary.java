@@ -0,0 +1,257 @@
+package net.tiny.nlp.open;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Immutable dictionary of a memory-mapped binary file.
+ *
+ * The words of '.dic' files are compiled into the sorted UTF-8 keys:
+ * <pre>
+ * int magic, int version, int count, int data length
+ * int[count + 1] key offsets in the data
+ * byte[data length] UTF-8 keys sorted by unsigned bytes
+ * </pre>
+ * A lookup encodes the chars of the text on the fly and narrows the range of keys
+ * sharing the prefix by binary search, no string is created on the heap.
+ * The file is mapped read only, the pages are shared by all JVMs on the same host.
+ * The size of a file is limited to 2G bytes.
+ *
+ */
+public final class MappedDictionary implements WordDictionary {
+
+    private static final Logger LOGGER = Logger.getLogger(MappedDictionary.class.getName());
+
+    static final int MAGIC = 0x54444943; // "TDIC"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    // The first byte of the UTF-8 sequence of n bytes
+    private static final int[] LEADS = {0, 0, 0xC0, 0xE0, 0xF0};
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int data;
+
+    private MappedDictionary(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a dictionary file.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(String.format("Unsupported dictionary version %d.", buffer.getInt(4)));
+        }
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.data = HEADER_SIZE + (count + 1) * 4;
+        if (data + buffer.getInt(12) != buffer.capacity()) {
+            throw new IOException("Broken dictionary file.");
+        }
+    }
+
+    /**
+     * Map a compiled dictionary file.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static MappedDictionary open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping is valid after closing the channel
+            return new MappedDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Compile the dictionaries of one word per line, the empty lines and
+     * the lines starting with '#' are skipped.
+     * The file is written to a temporary file and moved atomically.
+     *
+     * @param file The compiled dictionary file
+     * @param dictionaries
+     * @return Number of words
+     * @throws IOException
+     */
+    public static int compile(Path file, Collection<URL> dictionaries) throws IOException {
+        final List<byte[]> keys = new ArrayList<>();
+        for (URL url : dictionaries) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        keys.add(line.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        }
+        keys.sort(MappedDictionary::compare);
+        // Remove the duplicated keys
+        int n = 0;
+        long length = 0L;
+        for (byte[] key : keys) {
+            if (n == 0 || compare(keys.get(n - 1), key) != 0) {
+                keys.set(n++, key);
+                length += key.length;
+            }
+        }
+        if (HEADER_SIZE + (n + 1) * 4L + length > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Too large dictionary of %d words.", n));
+        }
+        final Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(n);
+                out.writeInt((int) length);
+                int offset = 0;
+                for (int i = 0; i < n; i++) {
+                    out.writeInt(offset);
+                    offset += keys.get(i).length;
+                }
+                out.writeInt(offset);
+                for (int i = 0; i < n; i++) {
+                    out.write(keys.get(i));
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        LOGGER.info(String.format("Compiled %d words to '%s'.", n, file));
+        return n;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param index
+     * @return The word of the index in the sorted order
+     */
+    public String word(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        final byte[] bytes = new byte[keyLength(index)];
+        final ByteBuffer view = buffer.duplicate();
+        view.position(data + offset(index));
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean contains(CharSequence word) {
+        return word.length() > 0 && match(word, 0, word.length()) == word.length();
+    }
+
+    @Override
+    public int longestMatch(CharSequence text, int start, int end) {
+        return match(text, start, end);
+    }
+
+    private int match(CharSequence text, int start, int end) {
+        // The keys [low, high) share the first depth bytes
+        int low = 0;
+        int high = count;
+        int depth = 0;
+        int longest = 0;
+        int i = start;
+        while (i < end && low < high) {
+            final char c = text.charAt(i++);
+            int cp = c;
+            if (Character.isHighSurrogate(c) && i < end && Character.isLowSurrogate(text.charAt(i))) {
+                cp = Character.toCodePoint(c, text.charAt(i++));
+            } else if (Character.isSurrogate(c)) {
+                // A broken pair is encoded as '?'
+                cp = '?';
+            }
+            // UTF-8 bytes of the code point
+            final int n = cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+            for (int k = 0; k < n && low < high; k++) {
+                final int b;
+                if (n == 1) {
+                    b = cp;
+                } else if (k == 0) {
+                    b = LEADS[n] | (cp >> (6 * (n - 1)));
+                } else {
+                    b = 0x80 | ((cp >> (6 * (n - 1 - k))) & 0x3F);
+                }
+                final int from = lowerBound(low, high, depth, b);
+                high = lowerBound(from, high, depth, b + 1);
+                low = from;
+                depth++;
+            }
+            // The shortest key of the range comes first
+            if (low < high && keyLength(low) == depth) {
+                longest = i - start;
+            }
+        }
+        return longest;
+    }
+
+    // The first key of [low, high) whose byte at the depth is not less than b
+    private int lowerBound(int low, int high, int depth, int b) {
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (byteAt(mid, depth) < b) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Unsigned byte of the key, -1 after the end
+    private int byteAt(int index, int depth) {
+        final int offset = offset(index);
+        if (depth >= offset(index + 1) - offset) {
+            return -1;
+        }
+        return buffer.get(data + offset + depth) & 0xFF;
+    }
+
+    private int offset(int index) {
+        return buffer.getInt(HEADER_SIZE + index * 4);
+    }
+
+    private int keyLength(int index) {
+        return offset(index + 1) - offset(index);
+    }
+
+    static int compare(byte[] a, byte[] b) {
+        final int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            final int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MappedDictionary(%d words)", count);
+    }
+}
@@ -0,0 +1,450 @@
+package net.tiny.nlp.open;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import opennlp.tools.langdetect.LanguageDetectorFactory;
+import opennlp.tools.langdetect.LanguageDetectorModel;
+import opennlp.tools.ml.maxent.GISModel;
+import opennlp.tools.ml.maxent.quasinewton.QNModel;
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.ml.naivebayes.NaiveBayesModel;
+import opennlp.tools.ml.perceptron.PerceptronModel;
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.namefind.TokenNameFinderFactory;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.util.SequenceCodec;
+
+/**
+ * Pre-parsed bundle of the NER models and the language detector in one memory-mapped file.
+ *
+ * A '.bin' model is a zip of serialized parameters, loading it inflates and parses
+ * every predicate on each boot. The bundle keeps the parameters as primitive arrays:
+ * <pre>
+ * int magic, int version
+ * entries: NER (language, beam size, codec, factory, descriptor, manifest) or
+ *          detector (language codes and names), then the maxent model:
+ *          model type, outcomes, predicates, int[predicates + 1] offsets,
+ *          int[] outcome indexes, double[] parameters
+ * index: int count, (byte kind, name, int offset) per entry
+ * int index offset
+ * </pre>
+ * Opening a bundle reads the index only, a model is built from the mapped arrays by
+ * bulk copies when it is requested. OpenNLP evaluates the models on heap arrays,
+ * so the parameters are copied once, but nothing is inflated nor parsed.
+ * The models with feature resources (dictionaries, word clusters) are not bundled.
+ *
+ */
+public final class ModelBundle {
+
+    private static final Logger LOGGER = Logger.getLogger(ModelBundle.class.getName());
+
+    static final int MAGIC = 0x544E4C42; // "TNLB"
+    static final int VERSION = 1;
+    static final byte NAME_FINDER = 1;
+    static final byte LANGUAGE_DETECTOR = 2;
+    static final String LANGUAGE_DETECTOR_NAME = "langdetect";
+
+    static final String MANIFEST_ENTRY = "manifest.properties";
+    static final String GENERATOR_DESCRIPTOR_ENTRY = "generator.featuregen";
+    static final String BEAM_SIZE_PARAMETER = "BeamSize";
+    static final String FACTORY_PARAMETER = "factory";
+    // Set by the model of the running OpenNLP
+    private static final List<String> RUNTIME_MANIFEST = Arrays.asList("Manifest-Version", "OpenNLP-Version");
+    // The descriptor elements loading a resource of the model
+    private static final Pattern RESOURCE_GENERATOR = Pattern.compile("(?i)dict|cluster|w2v");
+
+    private final ByteBuffer buffer;
+    // Entry name to the offset and the kind
+    private final Map<String, int[]> entries = new LinkedHashMap<>();
+
+    private ModelBundle(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < 12 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a model bundle file.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(String.format("Unsupported model bundle version %d.", buffer.getInt(4)));
+        }
+        this.buffer = buffer;
+        final ByteBuffer view = view(buffer.getInt(buffer.capacity() - 4));
+        final int count = view.getInt();
+        for (int i = 0; i < count; i++) {
+            final byte kind = view.get();
+            final String name = readString(view);
+            entries.put(name, new int[] {view.getInt(), kind});
+        }
+    }
+
+    /**
+     * Map a bundle file.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static ModelBundle open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping is valid after closing the channel
+            return new ModelBundle(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Write the NER models of a factory to a bundle file.
+     *
+     * @param file
+     * @param factory
+     * @return Number of bundled models
+     * @throws IOException
+     */
+    public static int write(Path file, NameFinderFactory factory) throws IOException {
+        return write(file, factory, null);
+    }
+
+    /**
+     * Write the NER models of a factory and the language detector to a bundle file.
+     * The name finders without a model, like {@link GazetteerNameFinder}, are skipped.
+     * The file is written to a temporary file and moved atomically.
+     *
+     * @param file
+     * @param factory
+     * @param detector The language detector, or null
+     * @return Number of bundled models
+     * @throws IOException
+     */
+    static int write(Path file, NameFinderFactory factory, LanguageWrapper detector) throws IOException {
+        final Map<String, TokenNameFinderModel> models = new LinkedHashMap<>();
+        for (String modelName : factory.getAllModelNames()) {
+            final TokenNameFinder finder = factory.getNameFinder(modelName);
+            if (finder instanceof NameFinderPool) {
+                models.put(modelName, ((NameFinderPool) finder).getModel());
+            } else {
+                LOGGER.fine(String.format("Skip the name finder '%s' without a model.", modelName));
+            }
+        }
+        final Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        int count = 0;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                final List<Object[]> index = new ArrayList<>();
+                for (Map.Entry<String, TokenNameFinderModel> e : models.entrySet()) {
+                    final int offset = out.size();
+                    if (writeNameFinder(out, e.getKey(), e.getValue())) {
+                        index.add(new Object[] {NAME_FINDER, e.getKey(), offset});
+                    }
+                }
+                if (null != detector) {
+                    final int offset = out.size();
+                    if (writeLanguageDetector(out, detector)) {
+                        index.add(new Object[] {LANGUAGE_DETECTOR, LANGUAGE_DETECTOR_NAME, offset});
+                    }
+                }
+                final int offset = out.size();
+                out.writeInt(index.size());
+                for (Object[] entry : index) {
+                    out.writeByte((Byte) entry[0]);
+                    writeString(out, (String) entry[1]);
+                    out.writeInt((Integer) entry[2]);
+                }
+                out.writeInt(offset);
+                if (out.size() == Integer.MAX_VALUE) {
+                    // The counter stops at 2G bytes
+                    throw new IOException("Too large model bundle.");
+                }
+                count = index.size();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        LOGGER.info(String.format("Bundled %d OpenNLP models to '%s'.", count, file));
+        return count;
+    }
+
+    private static boolean writeNameFinder(DataOutputStream out, String modelName, TokenNameFinderModel model) throws IOException {
+        final Object maxent = model.getArtifact(ModelCache.MAXENT_MODEL_ENTRY);
+        final byte[] descriptor = (byte[]) model.getArtifact(GENERATOR_DESCRIPTOR_ENTRY);
+        if (!(maxent instanceof AbstractModel)) {
+            LOGGER.warning(String.format("Skip the model '%s' of an unsupported type.", modelName));
+            return false;
+        }
+        if (null != descriptor && RESOURCE_GENERATOR.matcher(new String(descriptor, StandardCharsets.UTF_8)).find()) {
+            LOGGER.warning(String.format("Skip the model '%s' with feature resources.", modelName));
+            return false;
+        }
+        final Properties manifest = (Properties) model.getArtifact(MANIFEST_ENTRY);
+        writeString(out, model.getLanguage());
+        out.writeInt(Integer.parseInt(manifest.getProperty(BEAM_SIZE_PARAMETER, "3")));
+        writeString(out, model.getSequenceCodec().getClass().getName());
+        writeString(out, manifest.getProperty(FACTORY_PARAMETER, TokenNameFinderFactory.class.getName()));
+        if (null == descriptor) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(descriptor.length);
+            out.write(descriptor);
+        }
+        final Map<String, String> entries = new TreeMap<>();
+        for (String key : manifest.stringPropertyNames()) {
+            if (!RUNTIME_MANIFEST.contains(key)) {
+                entries.put(key, manifest.getProperty(key));
+            }
+        }
+        writeMap(out, entries);
+        writeMaxent(out, (AbstractModel) maxent);
+        return true;
+    }
+
+    private static boolean writeLanguageDetector(DataOutputStream out, LanguageWrapper detector) throws IOException {
+        if (!(detector.getModel() instanceof AbstractModel)) {
+            LOGGER.warning("Skip the language detector of an unsupported type.");
+            return false;
+        }
+        final Map<String, String> languages = new TreeMap<>();
+        for (String code : detector.getCodes()) {
+            languages.put(code, detector.getLanguage(code));
+        }
+        writeMap(out, languages);
+        writeMaxent(out, (AbstractModel) detector.getModel());
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeMaxent(DataOutputStream out, AbstractModel model) throws IOException {
+        final Object[] data = model.getDataStructures();
+        final Map<String, Context> pmap = (Map<String, Context>) data[1];
+        final String[] outcomes = (String[]) data[2];
+        writeString(out, model.getModelType().name());
+        out.writeInt(outcomes.length);
+        for (String outcome : outcomes) {
+            writeString(out, outcome);
+        }
+        final List<Context> contexts = new ArrayList<>(pmap.size());
+        out.writeInt(pmap.size());
+        for (Map.Entry<String, Context> e : pmap.entrySet()) {
+            writeString(out, e.getKey());
+            contexts.add(e.getValue());
+        }
+        int total = 0;
+        for (Context context : contexts) {
+            out.writeInt(total);
+            total += context.getOutcomes().length;
+        }
+        out.writeInt(total);
+        for (Context context : contexts) {
+            for (int outcome : context.getOutcomes()) {
+                out.writeInt(outcome);
+            }
+        }
+        for (Context context : contexts) {
+            for (double parameter : context.getParameters()) {
+                out.writeDouble(parameter);
+            }
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @return The names of the bundled NER models
+     */
+    public String[] getModelNames() {
+        return entries.entrySet().stream()
+                .filter(e -> e.getValue()[1] == NAME_FINDER)
+                .map(Map.Entry::getKey)
+                .toArray(String[]::new);
+    }
+
+    public boolean hasLanguageDetector() {
+        return entries.containsKey(LANGUAGE_DETECTOR_NAME);
+    }
+
+    /**
+     * Build a NER model from the bundle.
+     *
+     * @param modelName
+     * @return The model, or null when not bundled
+     * @throws IOException
+     */
+    public TokenNameFinderModel getNameFinderModel(String modelName) throws IOException {
+        final int[] entry = entries.get(modelName);
+        if (null == entry || entry[1] != NAME_FINDER) {
+            return null;
+        }
+        final ByteBuffer view = view(entry[0]);
+        final String language = readString(view);
+        final int beamSize = view.getInt();
+        final String codec = readString(view);
+        final String factoryName = readString(view);
+        final int length = view.getInt();
+        byte[] descriptor = null;
+        if (length >= 0) {
+            descriptor = new byte[length];
+            view.get(descriptor);
+        }
+        final Map<String, String> manifest = readMap(view, new HashMap<>());
+        final MaxentModel maxent = readMaxent(view);
+        final Map<String, Object> resources = Collections.emptyMap();
+        final SequenceCodec<String> sequenceCodec = TokenNameFinderFactory.instantiateSequenceCodec(codec);
+        final TokenNameFinderFactory factory = TokenNameFinderFactory.create(factoryName, descriptor, resources, sequenceCodec);
+        return new TokenNameFinderModel(language, maxent, beamSize, descriptor, resources, manifest,
+                sequenceCodec, factory);
+    }
+
+    /**
+     * Build a factory of all bundled NER models.
+     *
+     * @return
+     * @throws IOException
+     */
+    public NameFinderFactory createNameFinderFactory() throws IOException {
+        return new NameFinderFactory(getNameFinders(), null);
+    }
+
+    /**
+     * Register all bundled NER models to a cache, a model is built on first use.
+     *
+     * @param cache
+     * @return The registered model names
+     */
+    public String[] register(ModelCache cache) {
+        final String[] modelNames = getModelNames();
+        for (String modelName : modelNames) {
+            cache.register(modelName, () -> getNameFinderModel(modelName));
+        }
+        return modelNames;
+    }
+
+    /**
+     * @return The name finders of all bundled NER models
+     * @throws IOException
+     */
+    public Map<String, TokenNameFinder> getNameFinders() throws IOException {
+        final Map<String, TokenNameFinder> finders = new LinkedHashMap<>();
+        for (String modelName : getModelNames()) {
+            finders.put(modelName, new NameFinderPool(getNameFinderModel(modelName)));
+        }
+        return finders;
+    }
+
+    /**
+     * Build the language detector from the bundle, the context generator
+     * of the default {@link LanguageDetectorFactory} is used.
+     *
+     * @param cacheSize
+     * @return The detector, or null when not bundled
+     */
+    LanguageWrapper createLanguageWrapper(int cacheSize) {
+        final int[] entry = entries.get(LANGUAGE_DETECTOR_NAME);
+        if (null == entry) {
+            return null;
+        }
+        final ByteBuffer view = view(entry[0]);
+        final SortedMap<String, String> languages = readMap(view, new TreeMap<>());
+        final LanguageDetectorModel model = new LanguageDetectorModel(readMaxent(view),
+                Collections.emptyMap(), new LanguageDetectorFactory());
+        return new LanguageWrapper(languages, model, cacheSize);
+    }
+
+    private static MaxentModel readMaxent(ByteBuffer view) {
+        final String type = readString(view);
+        final String[] outcomes = new String[view.getInt()];
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = readString(view);
+        }
+        final String[] predicates = new String[view.getInt()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = readString(view);
+        }
+        final int[] offsets = readInts(view, predicates.length + 1);
+        final int total = offsets[predicates.length];
+        final int[] indexes = readInts(view, total);
+        final double[] parameters = new double[total];
+        view.asDoubleBuffer().get(parameters);
+        view.position(view.position() + total * 8);
+        final Context[] contexts = new Context[predicates.length];
+        for (int i = 0; i < contexts.length; i++) {
+            contexts[i] = new Context(Arrays.copyOfRange(indexes, offsets[i], offsets[i + 1]),
+                    Arrays.copyOfRange(parameters, offsets[i], offsets[i + 1]));
+        }
+        switch (AbstractModel.ModelType.valueOf(type)) {
+        case Perceptron:
+            return new PerceptronModel(contexts, predicates, outcomes);
+        case MaxentQn:
+            return new QNModel(contexts, predicates, outcomes);
+        case NaiveBayes:
+            return new NaiveBayesModel(contexts, predicates, outcomes);
+        default:
+            return new GISModel(contexts, predicates, outcomes);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer view, int length) {
+        final int[] values = new int[length];
+        view.asIntBuffer().get(values);
+        view.position(view.position() + length * 4);
+        return values;
+    }
+
+    private static <M extends Map<String, String>> M readMap(ByteBuffer view, M map) {
+        final int size = view.getInt();
+        for (int i = 0; i < size; i++) {
+            map.put(readString(view), readString(view));
+        }
+        return map;
+    }
+
+    private static String readString(ByteBuffer view) {
+        final byte[] bytes = new byte[view.getInt()];
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer view(int offset) {
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        return view;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ModelBundle(%s)", entries.keySet());
+    }
+}
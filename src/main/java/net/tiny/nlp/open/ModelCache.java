@@ -0,0 +1,456 @@
+package net.tiny.nlp.open;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.namefind.TokenNameFinderModel;
+
+/**
+ * Memory bounded cache of the NER models.
+ *
+ * The models are registered by name and loaded on first use, a model is loaded
+ * once even if many threads ask for it. The heap footprint of each model is
+ * estimated from its parameters, when the total is over the budget the models
+ * used least frequently, then least recently, are evicted. The use counts are
+ * halved on each eviction so the models used often long ago can age out.
+ * The evicted model stays valid for the threads still using it, its pool is closed
+ * so the model is collected when they are done.
+ * The models obtained together by {@link #getAll(Collection)} are limited to the budget
+ * and not evicted by each other, many models of a language do not thrash the cache.
+ *
+ */
+public class ModelCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ModelCache.class.getName());
+
+    public static final String MODEL_CACHE_BYTES = "model.cache.bytes";
+    public static final long DEFAULT_MAX_BYTES = 512L * 1024L * 1024L; //512M
+
+    static final String MAXENT_MODEL_ENTRY = "nameFinder.model";
+    // Feature generators, codec and the other fixed parts of a model
+    static final long MODEL_OVERHEAD = 16L * 1024L;
+    // Heap bytes per byte of the compressed model file, when the parameters are unknown
+    static final int FILE_SIZE_FACTOR = 8;
+
+    private final long maxBytes;
+    private final Map<String, Source> sources = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+    // The estimated size of the models loaded once
+    private final Map<String, Long> sizes = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    public ModelCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public ModelCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static long getMaxBytes(Properties param) {
+        return Long.parseLong(OpenNLP.getModelParam(param, MODEL_CACHE_BYTES, String.valueOf(DEFAULT_MAX_BYTES)));
+    }
+
+    /**
+     * Register a model to load on first use.
+     *
+     * @param url The model resource, the model name is guessed by {@link OpenNLP#guestModelName(URL)}
+     * @return
+     */
+    public ModelCache register(URL url) {
+        return register(OpenNLP.guestModelName(url), url);
+    }
+
+    public ModelCache register(String modelName, URL url) {
+        return register(modelName, new Source(url, () -> OpenNLP.loadNameFinderModel(url)));
+    }
+
+    /**
+     * Register a model built by a loader on first use, like a model of a {@link ModelBundle}.
+     *
+     * @param modelName
+     * @param loader Returns the model, or null when failed
+     * @return
+     */
+    public ModelCache register(String modelName, Callable<TokenNameFinderModel> loader) {
+        return register(modelName, new Source(null, loader));
+    }
+
+    private ModelCache register(String modelName, Source source) {
+        final Source previous = sources.put(modelName, source);
+        if (null != previous && (null == source.url || !source.url.equals(previous.url))) {
+            // The loaded model is replaced on next use
+            invalidate(modelName);
+        }
+        return this;
+    }
+
+    public ModelCache register(Collection<URL> urls) {
+        for (URL url : urls) {
+            register(url);
+        }
+        return this;
+    }
+
+    /**
+     * @return The registered model names
+     */
+    public String[] getModelNames() {
+        return sources.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * @return Number of the registered models
+     */
+    public int size() {
+        return sources.size();
+    }
+
+    public boolean contains(String modelName) {
+        return sources.containsKey(modelName);
+    }
+
+    /**
+     * Obtain the model, load it when not cached.
+     *
+     * @param modelName
+     * @return The name finder, or null when not registered or failed to load
+     */
+    public NameFinderPool get(String modelName) {
+        final Entry entry = entry(modelName, Collections.singleton(modelName));
+        return null == entry ? null : entry.pool;
+    }
+
+    /**
+     * Obtain many models within the budget, the loaded models first then the others
+     * are loaded while the total fits. A model found over the budget on its first load
+     * is evicted again and skipped by the next calls. The obtained models are not evicted
+     * by the loads of this call, at least one model is obtained even if it is over the budget.
+     *
+     * @param modelNames
+     * @return The name finders by model name in the order of the names, without the models over the budget
+     */
+    public Map<String, NameFinderPool> getAll(Collection<String> modelNames) {
+        final Map<String, NameFinderPool> found = new HashMap<>();
+        final List<String> missing = new ArrayList<>();
+        long total = 0L;
+        for (String modelName : modelNames) {
+            final CompletableFuture<Entry> future = entries.get(modelName);
+            final Entry entry = null == future ? null : future.getNow(null);
+            if (null == entry) {
+                missing.add(modelName);
+            } else if (found.isEmpty() || total + entry.size <= maxBytes) {
+                hits.incrementAndGet();
+                entry.touch();
+                found.put(modelName, entry.pool);
+                total += entry.size;
+            }
+        }
+        final Set<String> keep = new HashSet<>(found.keySet());
+        for (String modelName : missing) {
+            if (!found.isEmpty() && total + sizes.getOrDefault(modelName, 0L) > maxBytes) {
+                continue;
+            }
+            keep.add(modelName);
+            final Entry entry = entry(modelName, keep);
+            if (null == entry) {
+                keep.remove(modelName);
+            } else if (!found.isEmpty() && total + entry.size > maxBytes) {
+                // Over the budget, the size is known from now on
+                keep.remove(modelName);
+                evict(keep);
+            } else {
+                found.put(modelName, entry.pool);
+                total += entry.size;
+            }
+        }
+        final Map<String, NameFinderPool> pools = new LinkedHashMap<>();
+        for (String modelName : modelNames) {
+            final NameFinderPool pool = found.get(modelName);
+            if (null != pool) {
+                pools.put(modelName, pool);
+            }
+        }
+        return pools;
+    }
+
+    // Obtain the entry, load it and evict the others except the kept models
+    private Entry entry(String modelName, Set<String> keep) {
+        CompletableFuture<Entry> future = entries.get(modelName);
+        if (null == future) {
+            final Source source = sources.get(modelName);
+            if (null == source) {
+                return null;
+            }
+            final CompletableFuture<Entry> created = new CompletableFuture<>();
+            future = entries.putIfAbsent(modelName, created);
+            if (null == future) {
+                return load(modelName, source, created, keep);
+            }
+        }
+        final Entry entry = future.join();
+        if (null == entry) {
+            return null;
+        }
+        hits.incrementAndGet();
+        entry.touch();
+        return entry;
+    }
+
+    public NameFinderPool get(String language, String type) {
+        final String modelName = OpenNLP.getModelName(language, type);
+        if (sources.containsKey(modelName)) {
+            return get(modelName);
+        }
+        // Try to get default model
+        return get(OpenNLP.getModelName(language, null));
+    }
+
+    private Entry load(String modelName, Source source, CompletableFuture<Entry> future, Set<String> keep) {
+        final long start = System.nanoTime();
+        Entry entry = null;
+        try {
+            final TokenNameFinderModel model = source.loader.call();
+            if (null != model) {
+                entry = new Entry(modelName, new NameFinderPool(model), estimateSize(model, source.url));
+            }
+        } catch (Exception e) {
+            LOGGER.warning(String.format("Load '%s' error : %s", modelName, e.getMessage()));
+        } finally {
+            loadNanos.addAndGet(System.nanoTime() - start);
+            if (null == entry) {
+                failures.incrementAndGet();
+                entries.remove(modelName, future);
+            } else {
+                loads.incrementAndGet();
+                usedBytes.addAndGet(entry.size);
+                sizes.put(modelName, entry.size);
+            }
+            future.complete(entry);
+        }
+        if (null == entry) {
+            return null;
+        }
+        LOGGER.info(String.format("An OpenNLP '%s' model was loaded in %dms, about %dK bytes.",
+                modelName, (System.nanoTime() - start) / 1000000L, entry.size / 1024L));
+        evict(keep);
+        return entry;
+    }
+
+    // Evict the models until the total is under the budget, except the kept models
+    private synchronized void evict(Set<String> keep) {
+        if (usedBytes.get() <= maxBytes) {
+            return;
+        }
+        while (usedBytes.get() > maxBytes) {
+            Entry victim = null;
+            for (Map.Entry<String, CompletableFuture<Entry>> e : entries.entrySet()) {
+                final Entry entry = e.getValue().getNow(null);
+                if (null == entry || keep.contains(entry.name)) {
+                    continue;
+                }
+                if (null == victim || entry.compareTo(victim) < 0) {
+                    victim = entry;
+                }
+            }
+            if (null == victim) {
+                break;
+            }
+            remove(victim);
+            evictions.incrementAndGet();
+            LOGGER.info(String.format("An OpenNLP '%s' model was evicted, %d uses.", victim.name, victim.uses.get()));
+        }
+        // Aging of the use counts
+        for (CompletableFuture<Entry> future : entries.values()) {
+            final Entry entry = future.getNow(null);
+            if (null != entry) {
+                entry.uses.getAndUpdate(n -> n >> 1);
+            }
+        }
+    }
+
+    /**
+     * Drop a loaded model, it is loaded again on next use.
+     *
+     * @param modelName
+     */
+    public void invalidate(String modelName) {
+        final CompletableFuture<Entry> future = entries.get(modelName);
+        if (null != future) {
+            final Entry entry = future.getNow(null);
+            if (null != entry) {
+                remove(entry);
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        final CompletableFuture<Entry> future = entries.get(entry.name);
+        if (null != future && future.getNow(null) == entry && entries.remove(entry.name, future)) {
+            usedBytes.addAndGet(-entry.size);
+            entry.pool.close();
+        }
+    }
+
+    public void clear() {
+        for (CompletableFuture<Entry> future : entries.values()) {
+            final Entry entry = future.getNow(null);
+            if (null != entry) {
+                remove(entry);
+            }
+        }
+    }
+
+    /**
+     * @return The names of the loaded models
+     */
+    public String[] getLoadedModels() {
+        return entries.entrySet().stream()
+                .filter(e -> null != e.getValue().getNow(null))
+                .map(Map.Entry::getKey)
+                .sorted()
+                .toArray(String[]::new);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return The estimated heap bytes of the loaded models
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return The average load time of the models in milliseconds
+     */
+    public double getAverageLoadMillis() {
+        final long count = loads.get() + failures.get();
+        return count == 0L ? 0d : loadNanos.get() / 1000000d / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ModelCache(%d/%d bytes, %d hits, %d loads, %d failures, %d evictions, %.1fms/load)",
+                getUsedBytes(), maxBytes, getHits(), getLoads(), getFailures(), getEvictions(), getAverageLoadMillis());
+    }
+
+    /**
+     * Estimate the heap bytes of a model by its parameters and predicates.
+     *
+     * @param model
+     * @param url The model resource, used when the parameters are unknown, or null
+     * @return
+     */
+    static long estimateSize(TokenNameFinderModel model, URL url) {
+        final Object artifact = model.getArtifact(MAXENT_MODEL_ENTRY);
+        if (artifact instanceof AbstractModel) {
+            final Object[] data = ((AbstractModel) artifact).getDataStructures();
+            long size = MODEL_OVERHEAD;
+            for (Context context : (Context[]) data[0]) {
+                // The context, the outcomes array and the parameters array
+                size += 56L + 12L * context.getOutcomes().length;
+            }
+            for (Object predicate : ((Map<?, ?>) data[1]).keySet()) {
+                // The string and the hash map node
+                size += 80L + 2L * predicate.toString().length();
+            }
+            for (String outcome : (String[]) data[2]) {
+                size += 40L + 2L * outcome.length();
+            }
+            return size;
+        }
+        if (null == url) {
+            return MODEL_OVERHEAD;
+        }
+        try {
+            final URLConnection connection = url.openConnection();
+            return MODEL_OVERHEAD + Math.max(0L, connection.getContentLengthLong()) * FILE_SIZE_FACTOR;
+        } catch (IOException e) {
+            return MODEL_OVERHEAD;
+        }
+    }
+
+    // The resource and the loader of a model
+    static final class Source {
+        final URL url;
+        final Callable<TokenNameFinderModel> loader;
+
+        Source(URL url, Callable<TokenNameFinderModel> loader) {
+            this.url = url;
+            this.loader = loader;
+        }
+    }
+
+    static final class Entry implements Comparable<Entry> {
+        final String name;
+        final NameFinderPool pool;
+        final long size;
+        final AtomicLong uses = new AtomicLong();
+        volatile long lastAccess = System.nanoTime();
+
+        Entry(String name, NameFinderPool pool, long size) {
+            this.name = name;
+            this.pool = pool;
+            this.size = size;
+        }
+
+        void touch() {
+            uses.incrementAndGet();
+            lastAccess = System.nanoTime();
+        }
+
+        // The less used and the older first
+        @Override
+        public int compareTo(Entry other) {
+            final int c = Long.compare(frequency(uses.get()), frequency(other.uses.get()));
+            return c != 0 ? c : Long.compare(lastAccess - other.lastAccess, 0L);
+        }
+
+        // Log scale of the use count
+        private static int frequency(long uses) {
+            return 64 - Long.numberOfLeadingZeros(uses);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package net.tiny.nlp.open;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.namefind.TokenNameFinderModel;
+
+/**
+ * Hot reload of the NER models in a directory.
+ *
+ * The directory is watched by a {@link WatchService}, the created or modified
+ * '&lt;language&gt;-ner*.bin' files are loaded and warmed up by a background thread,
+ * then swapped into the {@link NameFinderFactory} at once. The deleted files are removed
+ * in the same swap. The readers keep using the previous snapshot until the swap,
+ * so the extraction is never paused nor sees a half loaded model.
+ * The pools of the replaced models are closed to release them.
+ * Write a new model to a temporary name and move it into the directory.
+ *
+ */
+public class ModelRegistry implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ModelRegistry.class.getName());
+
+    // Quiet period after the last event of a file before loading it
+    static final long DEFAULT_QUIET_MILLIS = 500L;
+    static final String MODEL_SUFFIX = ".bin";
+    private static final String[] WARM_UP_SENTENCE = {"This", "is", "a", "warm", "up", "sentence", "."};
+
+    private final NameFinderFactory factory;
+    private final Path directory;
+    private final String prefix;
+    private final long quietMillis;
+    // Last modified time of the loaded files
+    private final Map<Path, FileTime> loaded = new ConcurrentHashMap<>();
+    private WatchService watcher;
+    private Thread thread;
+
+    public ModelRegistry(NameFinderFactory factory, Path directory, String language) {
+        this(factory, directory, language, DEFAULT_QUIET_MILLIS);
+    }
+
+    public ModelRegistry(NameFinderFactory factory, Path directory, String language, long quietMillis) {
+        this.factory = factory;
+        this.directory = directory;
+        this.prefix = OpenNLP.getModelName(language, null);
+        this.quietMillis = quietMillis;
+    }
+
+    public NameFinderFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * @return The loaded model files
+     */
+    public Set<Path> getLoadedFiles() {
+        return Collections.unmodifiableSet(loaded.keySet());
+    }
+
+    /**
+     * Load the models in the directory and start watching it.
+     *
+     * @return
+     * @throws IOException
+     */
+    public synchronized ModelRegistry start() throws IOException {
+        if (null != thread) {
+            return this;
+        }
+        watcher = directory.getFileSystem().newWatchService();
+        directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        reload();
+        thread = new Thread(this::watch, "model-registry-" + directory.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+        LOGGER.info(String.format("Watching the OpenNLP models in '%s'.", directory));
+        return this;
+    }
+
+    /**
+     * Rescan the directory, load the new and modified models and remove the deleted ones.
+     * The scan and the swap hold the lock of the updates, a concurrent update
+     * can not change the loaded files in between.
+     *
+     * @return The factory version after the swap
+     * @throws IOException
+     */
+    public synchronized long reload() throws IOException {
+        final Set<Path> files = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, this::isModel)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        final Set<Path> removed = new HashSet<>(loaded.keySet());
+        removed.removeAll(files);
+        return update(files, removed);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (null == thread) {
+            return;
+        }
+        thread.interrupt();
+        watcher.close();
+        thread = null;
+    }
+
+    private void watch() {
+        final Set<Path> changed = new HashSet<>();
+        final Set<Path> deleted = new HashSet<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // Collect the events until the directory is quiet
+                final WatchKey key = changed.isEmpty() && deleted.isEmpty()
+                        ? watcher.take() : watcher.poll(quietMillis, TimeUnit.MILLISECONDS);
+                if (null == key) {
+                    update(changed, deleted);
+                    changed.clear();
+                    deleted.clear();
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Some events were lost
+                        changed.clear();
+                        deleted.clear();
+                        reload();
+                        continue;
+                    }
+                    final Path file = directory.resolve((Path) event.context());
+                    if (!isModel(file)) {
+                        continue;
+                    }
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        changed.remove(file);
+                        deleted.add(file);
+                    } else {
+                        deleted.remove(file);
+                        changed.add(file);
+                    }
+                }
+                if (!key.reset()) {
+                    LOGGER.warning(String.format("The model directory '%s' is not accessible.", directory));
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, String.format("Watching '%s' error : %s", directory, e.getMessage()), e);
+        }
+    }
+
+    // Load and warm up the changed models, then swap them in at once
+    private synchronized long update(Collection<Path> changed, Collection<Path> deleted) {
+        final Map<String, TokenNameFinder> updates = new HashMap<>();
+        final Map<Path, FileTime> times = new HashMap<>();
+        for (Path file : changed) {
+            try {
+                final FileTime time = Files.getLastModifiedTime(file);
+                if (time.equals(loaded.get(file))) {
+                    continue;
+                }
+                final TokenNameFinderModel model = OpenNLP.loadNameFinderModel(file.toUri().toURL());
+                if (null == model) {
+                    // Retry on the next event
+                    continue;
+                }
+                final NameFinderPool pool = new NameFinderPool(model);
+                pool.find(WARM_UP_SENTENCE);
+                pool.clearAdaptiveData();
+                updates.put(modelName(file), pool);
+                times.put(file, time);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warning(String.format("Load '%s' error : %s", file, e.getMessage()));
+            }
+        }
+        final List<String> removed = new ArrayList<>();
+        for (Path file : deleted) {
+            if (null != loaded.remove(file)) {
+                removed.add(modelName(file));
+            }
+        }
+        if (updates.isEmpty() && removed.isEmpty()) {
+            return factory.getVersion();
+        }
+        final List<TokenNameFinder> previous = new ArrayList<>();
+        for (String modelName : updates.keySet()) {
+            previous.add(factory.getNameFinder(modelName));
+        }
+        for (String modelName : removed) {
+            previous.add(factory.getNameFinder(modelName));
+        }
+        final long version = factory.swap(updates, removed);
+        // The readers of the old snapshot still find, the replaced models are collected after them
+        for (TokenNameFinder finder : previous) {
+            if (finder instanceof NameFinderPool) {
+                ((NameFinderPool) finder).close();
+            }
+        }
+        loaded.putAll(times);
+        LOGGER.info(String.format("OpenNLP models version %d, loaded %s removed %s.",
+                version, updates.keySet(), removed));
+        return version;
+    }
+
+    private boolean isModel(Path file) {
+        final String name = file.getFileName().toString();
+        return name.startsWith(prefix) && name.endsWith(MODEL_SUFFIX);
+    }
+
+    private static String modelName(Path file) {
+        try {
+            return OpenNLP.guestModelName(file.toUri().toURL());
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
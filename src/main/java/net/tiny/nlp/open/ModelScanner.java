@@ -0,0 +1,348 @@
+package net.tiny.nlp.open;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Discovery of the NER model files in the directories, the jars and the classpath.
+ *
+ * A model is a '.bin' file named like 'ja-ner-person.bin' or 'rondhuit-ja-ner-1.0.0.bin'.
+ * The model path is looked up in the file system and as a classpath resource,
+ * which may be a directory or a folder in a jar. With {@link #MODEL_SCAN} set to
+ * 'classpath' all directories and jars of the classpath are indexed, the model
+ * entries and the 'Class-Path' of each jar are kept in a manifest file with the jar
+ * size and time, an unchanged jar is not opened again on the next boot.
+ *
+ */
+public class ModelScanner {
+
+    private static final Logger LOGGER = Logger.getLogger(ModelScanner.class.getName());
+
+    public static final String MODEL_SCAN = "model.scan";
+    public static final String MODEL_MANIFEST = "model.manifest";
+    public static final String SCAN_CLASSPATH = "classpath";
+    public static final String DEFAULT_MODEL_MANIFEST = System.getProperty("java.io.tmpdir") + "/opennlp-models.idx";
+
+    static final String MODEL_SUFFIX = ".bin";
+    // Max depth of the classpath directories
+    static final int MAX_DEPTH = 16;
+
+    // Jar path to 'time,length,entry|entry...<TAB>Class-Path'
+    private final Properties manifest = new Properties();
+    private final Path manifestFile;
+    private final AtomicInteger cachedJars = new AtomicInteger();
+    private final AtomicInteger scannedJars = new AtomicInteger();
+    private boolean changed = false;
+
+    /**
+     * @param manifestFile The manifest of the indexed jars, or null not to cache
+     */
+    public ModelScanner(Path manifestFile) {
+        this.manifestFile = manifestFile;
+        if (null != manifestFile && Files.isRegularFile(manifestFile)) {
+            try (InputStream in = Files.newInputStream(manifestFile)) {
+                manifest.load(in);
+            } catch (IOException e) {
+                LOGGER.warning(String.format("Load the model manifest '%s' error : %s", manifestFile, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Find the models of the configured path and language, and of all the classpath
+     * when {@link #MODEL_SCAN} is 'classpath'.
+     *
+     * @param param
+     * @return The model resources, one per model name
+     */
+    public static List<URL> discover(Properties param) {
+        final String path = OpenNLP.getModelPath(param);
+        final String language = OpenNLP.getModelLanguage(param);
+        final List<URL> resources = new ArrayList<>();
+        if (SCAN_CLASSPATH.equalsIgnoreCase(OpenNLP.getModelParam(param, MODEL_SCAN, ""))) {
+            final ModelScanner scanner = new ModelScanner(Paths.get(OpenNLP.getModelParam(param, MODEL_MANIFEST, DEFAULT_MODEL_MANIFEST)));
+            resources.addAll(scanner.find(path, language));
+            resources.addAll(scanner.scanClasspath(language));
+            scanner.save();
+        } else {
+            resources.addAll(new ModelScanner(null).find(path, language));
+        }
+        // The first model of a name wins
+        final Map<String, URL> models = new LinkedHashMap<>();
+        for (URL url : resources) {
+            models.putIfAbsent(OpenNLP.guestModelName(url), url);
+        }
+        return new ArrayList<>(models.values());
+    }
+
+    /**
+     * Find the models of the language in a file system directory, or in the classpath
+     * directories and jar folders of the path.
+     *
+     * @param path
+     * @param language
+     * @return
+     */
+    public List<URL> find(String path, String language) {
+        final Set<URL> models = new LinkedHashSet<>();
+        final Path dir = Paths.get(path);
+        if (Files.isDirectory(dir)) {
+            models.addAll(listDirectory(dir, language, 1));
+        }
+        final String folder = path.replace('\\', '/').replaceAll("^/+|/+$", "");
+        try {
+            final Enumeration<URL> urls = Thread.currentThread().getContextClassLoader().getResources(folder);
+            while (urls.hasMoreElements()) {
+                final URL url = urls.nextElement();
+                if ("file".equals(url.getProtocol())) {
+                    models.addAll(listDirectory(Paths.get(url.toURI()), language, 1));
+                } else if ("jar".equals(url.getProtocol())) {
+                    final URLConnection connection = url.openConnection();
+                    connection.setUseCaches(false);
+                    final URL jar = ((JarURLConnection) connection).getJarFileURL();
+                    models.addAll(listJar(jar, folder + "/", language));
+                }
+            }
+        } catch (IOException | URISyntaxException e) {
+            LOGGER.warning(String.format("Find the models in '%s' error : %s", path, e.getMessage()));
+        }
+        return new ArrayList<>(models);
+    }
+
+    /**
+     * Index the models of the language in all entries of the classpath.
+     *
+     * @param language
+     * @return
+     */
+    public List<URL> scanClasspath(String language) {
+        return scan(classpath(), language);
+    }
+
+    public List<URL> scan(Collection<URL> classpath, String language) {
+        final List<URL> models = new ArrayList<>();
+        for (URL url : classpath) {
+            try {
+                final Path entry = Paths.get(url.toURI());
+                if (Files.isDirectory(entry)) {
+                    models.addAll(listDirectory(entry, language, MAX_DEPTH));
+                } else if (Files.isRegularFile(entry)) {
+                    models.addAll(listJar(url, "", language));
+                }
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                LOGGER.fine(String.format("Skip the classpath '%s' : %s", url, e.getMessage()));
+            }
+        }
+        return models;
+    }
+
+    /**
+     * Write the manifest of the indexed jars when changed.
+     */
+    public synchronized void save() {
+        if (null == manifestFile || !changed) {
+            return;
+        }
+        try {
+            final Path parent = manifestFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            final Path temp = Files.createTempFile(parent, manifestFile.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                manifest.store(out, "OpenNLP model entries of the jars");
+            }
+            Files.move(temp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        } catch (IOException e) {
+            LOGGER.warning(String.format("Save the model manifest '%s' error : %s", manifestFile, e.getMessage()));
+        }
+    }
+
+    /**
+     * @return Number of jars found in the manifest
+     */
+    public int getCachedJars() {
+        return cachedJars.get();
+    }
+
+    /**
+     * @return Number of jars opened to list the entries
+     */
+    public int getScannedJars() {
+        return scannedJars.get();
+    }
+
+    private List<URL> listDirectory(Path dir, String language, int depth) {
+        try (Stream<Path> files = Files.walk(dir, depth)) {
+            return files.filter(f -> isModel(f.getFileName().toString(), language) && Files.isRegularFile(f))
+                    .sorted()
+                    .map(ModelScanner::toURL)
+                    .collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warning(String.format("List the models in '%s' error : %s", dir, e.getMessage()));
+            return Collections.emptyList();
+        }
+    }
+
+    // The model entries under the folder of a jar
+    private List<URL> listJar(URL jar, String folder, String language) {
+        final List<URL> models = new ArrayList<>();
+        for (String name : jarEntries(jar)) {
+            final int pos = name.lastIndexOf('/');
+            if (name.startsWith(folder) && isModel(name.substring(pos + 1), language)
+                    && (folder.isEmpty() || pos == folder.length() - 1)) {
+                try {
+                    models.add(new URL("jar:" + jar.toExternalForm() + "!/" + name));
+                } catch (MalformedURLException e) {
+                    // Never
+                }
+            }
+        }
+        return models;
+    }
+
+    // All model entries of a jar
+    private List<String> jarEntries(URL jar) {
+        final String entries = jarIndex(jar)[0];
+        return entries.isEmpty() ? Collections.emptyList() : Arrays.asList(entries.split("\\|"));
+    }
+
+    // The model entries and the 'Class-Path' of a jar, cached by the jar size and time
+    private synchronized String[] jarIndex(URL jar) {
+        final File file;
+        try {
+            file = new File(jar.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return new String[] {"", ""};
+        }
+        if (!file.isFile()) {
+            return new String[] {"", ""};
+        }
+        final String key = file.getAbsolutePath();
+        final String stamp = file.lastModified() + "," + file.length() + ",";
+        final String cached = manifest.getProperty(key);
+        // An entry without the Class-Path was written by an older version
+        final int tab = (null != cached && cached.startsWith(stamp)) ? cached.indexOf('\t', stamp.length()) : -1;
+        if (tab >= 0) {
+            cachedJars.incrementAndGet();
+            return new String[] {cached.substring(stamp.length(), tab), cached.substring(tab + 1)};
+        }
+        final List<String> entries = new ArrayList<>();
+        String classPath = null;
+        try (JarFile jarFile = new JarFile(file)) {
+            scannedJars.incrementAndGet();
+            final Enumeration<JarEntry> e = jarFile.entries();
+            while (e.hasMoreElements()) {
+                final String name = e.nextElement().getName();
+                if (name.endsWith(MODEL_SUFFIX)) {
+                    entries.add(name);
+                }
+            }
+            final Manifest mf = jarFile.getManifest();
+            classPath = (null == mf) ? null : mf.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+        } catch (IOException e) {
+            LOGGER.warning(String.format("Scan the jar '%s' error : %s", file, e.getMessage()));
+            return new String[] {"", ""};
+        }
+        final String[] index = {String.join("|", entries), (null == classPath) ? "" : classPath.trim()};
+        manifest.setProperty(key, stamp + index[0] + '\t' + index[1]);
+        changed = true;
+        return index;
+    }
+
+    /**
+     * A model of the language is named like '&lt;language&gt;-ner*.bin' or '*-&lt;language&gt;-ner*.bin'.
+     *
+     * @param fileName
+     * @param language
+     * @return
+     */
+    static boolean isModel(String fileName, String language) {
+        final String prefix = OpenNLP.getModelName(language, null);
+        return fileName.endsWith(MODEL_SUFFIX)
+                && (fileName.startsWith(prefix) || fileName.contains("-" + prefix));
+    }
+
+    // The classpath entries and the 'Class-Path' of the jar manifests
+    Set<URL> classpath() {
+        final Set<URL> urls = new LinkedHashSet<>();
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                urls.add(toURL(Paths.get(entry)));
+            }
+        }
+        for (ClassLoader loader = Thread.currentThread().getContextClassLoader(); null != loader; loader = loader.getParent()) {
+            if (loader instanceof URLClassLoader) {
+                urls.addAll(Arrays.asList(((URLClassLoader) loader).getURLs()));
+            }
+        }
+        final List<URL> queue = new ArrayList<>(urls);
+        for (int i = 0; i < queue.size(); i++) {
+            for (URL url : manifestClasspath(queue.get(i))) {
+                if (urls.add(url)) {
+                    queue.add(url);
+                }
+            }
+        }
+        return urls;
+    }
+
+    // The 'Class-Path' of a jar, read from the manifest cache when the jar is unchanged
+    private List<URL> manifestClasspath(URL jar) {
+        if (!jar.getPath().endsWith(".jar")) {
+            return Collections.emptyList();
+        }
+        final String value = jarIndex(jar)[1];
+        if (value.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<URL> urls = new ArrayList<>();
+        try {
+            for (String path : value.split("\\s+")) {
+                urls.add(new URL(jar, path));
+            }
+        } catch (MalformedURLException e) {
+            return Collections.emptyList();
+        }
+        return urls;
+    }
+
+    private static URL toURL(Path path) {
+        try {
+            return path.toUri().toURL();
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -1,51 +1,90 @@
 package net.tiny.nlp.open;
 
-import java.io.File;
-import java.io.FilenameFilter;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.namefind.TokenNameFinderModel;
 
 /**
  * Encapsulates OpenNLP's NameFinder by providing a mechanism to load all of the
  * name finder models files found in a single directory into memory and
  * instantiating an array of NameFinderME objects.
  *
+ * Each model is loaded once and shared by a {@link NameFinderPool},
+ * the stateful NameFinderME instances are created per calling thread.
+ * A thread safe {@link TokenNameFinder} like {@link GazetteerNameFinder}
+ * can be appended under a model name and is used with the models.
+ * The finders are kept in an immutable snapshot, every change copies it and
+ * swaps the new one atomically, so the readers never lock nor see a partial update.
+ * Each snapshot indexes the model names by language and type, a lookup is a couple
+ * of hash probes without formatting the model name.
+ * With a {@link ModelCache} the models are loaded on first use and evicted
+ * under a memory budget, set {@link ModelCache#MODEL_CACHE_BYTES} to use it.
+ * A {@link PatternNameFinder} of a language is a pre-stage of the other finders,
+ * the models of the types covered by its patterns are neither loaded nor run
+ * when the finders of the language are obtained together.
+ * The cached models obtained together are limited to the budget of the cache,
+ * a budget smaller than the models of a language drops some of them instead of
+ * loading and evicting each other on every call.
+ *
  */
 public class NameFinderFactory {
 
     private static final Logger LOGGER = Logger.getLogger(NameFinderFactory.class.getName());
 
-    private final Map<String, NameFinderME> finders;
+    static final String MODEL_INFIX = "-ner";
+
+    // Immutable snapshot, replaced on each change
+    private volatile Snapshot snapshot;
+    private volatile long version = 0L;
+    // The lazy loaded models, or null
+    private final ModelCache cache;
 
     public NameFinderFactory() {
         this(new Properties());
     }
 
     public NameFinderFactory(Properties param) {
-        this.finders = new HashMap<>();
-        final String path = OpenNLP.getModelPath(param);
-        final String language = OpenNLP.getModelLanguage(param);
-        final List<URL> resources = findNameFinderModels(path, language);
+        final Map<String, TokenNameFinder> map = new HashMap<>();
+        final List<URL> resources = ModelScanner.discover(param);
+        if (!OpenNLP.getModelParam(param, ModelCache.MODEL_CACHE_BYTES, "").isEmpty()) {
+            // Load on first use
+            this.cache = new ModelCache(ModelCache.getMaxBytes(param)).register(resources);
+            this.snapshot = new Snapshot(Collections.emptyMap(), cache);
+            return;
+        }
+        this.cache = null;
         for (URL url : resources) {
-            NameFinderME finder = OpenNLP.loadNameFinders(url);
-            if (null != finder) {
+            TokenNameFinderModel model = OpenNLP.loadNameFinderModel(url);
+            if (null != model) {
                 String modelName = OpenNLP.guestModelName(url);
-                finders.put(modelName, finder);
+                map.put(modelName, new NameFinderPool(model));
             }
         }
+        this.snapshot = new Snapshot(Collections.unmodifiableMap(map), null);
     }
 
     public NameFinderFactory(String... resources) {
-        this.finders = new HashMap<>();
+        this.snapshot = new Snapshot(Collections.emptyMap(), null);
+        this.cache = null;
         final ClassLoader loader = Thread.currentThread().getContextClassLoader();
         for (String res : resources) {
             URL url = loader.getResource(res);
@@ -57,95 +96,402 @@ public class NameFinderFactory {
         }
     }
 
+    public NameFinderFactory(ModelCache cache) {
+        this(Collections.emptyMap(), cache);
+    }
+
+    /**
+     * The name finders are used as they are, a NameFinderME is shared by all threads.
+     *
+     * @param finders The name finders by model name
+     * @deprecated The NameFinderME is not thread safe, load the models by {@link #NameFinderFactory(String...)}
+     *  or append a {@link NameFinderPool}
+     */
+    @Deprecated
     public NameFinderFactory(Map<String, NameFinderME> finders) {
-        this.finders = finders;
+        this(new HashMap<String, TokenNameFinder>(finders), null);
     }
 
-    protected List<URL> findNameFinderModels(String path, String language) {
-        final String modelPrefix = language + "-ner";
+    NameFinderFactory(Map<String, ? extends TokenNameFinder> finders, ModelCache cache) {
+        this.snapshot = new Snapshot(Collections.unmodifiableMap(new HashMap<>(finders)), cache);
+        this.cache = cache;
+    }
 
-        File[] models = new File(path).listFiles(new FilenameFilter() {
-            public boolean accept(File file, String name) {
-                if (name.startsWith(modelPrefix)) {
-                    return true;
-                }
-                return false;
-            }
-        });
+    /**
+     * @return The cache of the lazy loaded models, or null
+     */
+    public ModelCache getModelCache() {
+        return cache;
+    }
 
-        if (models == null || models.length < 1) {
-            return Collections.emptyList();
-        }
-        List<URL> res = new ArrayList<>();
-        for (File f : models) {
-            try {
-                res.add(f.toURI().toURL());
-            } catch (MalformedURLException e) {}
-        }
-        return res;
+    /**
+     * Find the models of the language in the directory or the classpath folder of the path.
+     *
+     * @param path
+     * @param language
+     * @return
+     * @see ModelScanner
+     */
+    protected List<URL> findNameFinderModels(String path, String language) {
+        return new ModelScanner(null).find(path, language);
     }
 
     protected void append(URL url) {
         String modelName = OpenNLP.guestModelName(url);
-        if (!finders.containsKey(modelName)) {
-            NameFinderME finder = OpenNLP.loadNameFinders(url);
-            if (null != finder) {
-                finders.put(modelName, finder);
+        if (!snapshot.finders.containsKey(modelName)) {
+            TokenNameFinderModel model = OpenNLP.loadNameFinderModel(url);
+            if (null != model) {
+                final NameFinderPool pool = new NameFinderPool(model);
+                update(map -> map.putIfAbsent(modelName, pool));
                 LOGGER.info(String.format("An OpenNLP '%s' modle was loaded.", modelName));
             }
         }
     }
 
+    /**
+     * Append a thread safe name finder.
+     *
+     * @param modelName The model name, like 'ja-ner-gazetteer'
+     * @param finder
+     * @return
+     */
+    public NameFinderFactory append(String modelName, TokenNameFinder finder) {
+        update(map -> map.put(modelName, finder));
+        return this;
+    }
+
+    /**
+     * Replace and remove many finders at once, the readers see
+     * either all of the changes or none of them.
+     *
+     * @param updates The new or replaced finders by model name
+     * @param removed The model names to remove
+     * @return The version after the swap
+     */
+    public long swap(Map<String, TokenNameFinder> updates, Collection<String> removed) {
+        return update(map -> {
+            map.keySet().removeAll(removed);
+            map.putAll(updates);
+        });
+    }
+
+    public TokenNameFinder remove(String modelName) {
+        final TokenNameFinder finder = snapshot.finders.get(modelName);
+        update(map -> map.remove(modelName));
+        return finder;
+    }
+
+    /**
+     * @return The version incremented by each change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    // Copy on write, the writers are serialized
+    private synchronized long update(Consumer<Map<String, TokenNameFinder>> change) {
+        final Map<String, TokenNameFinder> copy = new HashMap<>(snapshot.finders);
+        change.accept(copy);
+        snapshot = new Snapshot(Collections.unmodifiableMap(copy), cache);
+        return ++version;
+    }
+
+    // The current snapshot, indexed again when models were registered to the cache
+    private Snapshot snapshot() {
+        final Snapshot current = snapshot;
+        if (null != cache && current.cached != cache.size()) {
+            return reindex();
+        }
+        return current;
+    }
+
+    private synchronized Snapshot reindex() {
+        if (snapshot.cached != cache.size()) {
+            snapshot = new Snapshot(snapshot.finders, cache);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Load the models concurrently.
+     *
+     * @param resources The model resources
+     * @param executor
+     * @return A future completed when all models were loaded
+     */
+    public CompletableFuture<Void> load(Collection<URL> resources, Executor executor) {
+        final CompletableFuture<?>[] tasks = resources.stream()
+                .map(url -> CompletableFuture.runAsync(() -> append(url), executor))
+                .toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(tasks);
+    }
+
     public NameFinderFactory merge(NameFinderFactory factory) {
-        final Map<String, NameFinderME> copy = new HashMap<>(this.finders);
-        copy.putAll(factory.finders);
-        return new NameFinderFactory(copy);
+        final Map<String, TokenNameFinder> copy = new HashMap<>(this.snapshot.finders);
+        copy.putAll(factory.snapshot.finders);
+        return new NameFinderFactory(copy, cache);
     }
 
     public NameFinderFactory concat(NameFinderFactory factory) {
-        finders.putAll(factory.finders);
+        final Map<String, TokenNameFinder> others = factory.snapshot.finders;
+        update(map -> map.putAll(others));
         return this;
     }
 
     /**
-     * Obtain a reference to the array of NameFinderME's loaded by the engine.
+     * Obtain a NameFinderME borrowed from the pool of the model, it is not bound
+     * to the current thread and can be dropped or returned by {@link NameFinderPool#release(NameFinderME)}.
+     * The returned instance must not be shared with other threads.
      *
      * @param language
      * @param type
      * @return
      */
     public NameFinderME getNameFinders(String language, String type) {
-        String modelName  = OpenNLP.getModelName(language, type);
-        NameFinderME finder = finders.get(modelName);
-        if (null == finder) {
+        final TokenNameFinder finder = getNameFinder(language, type);
+        if (finder instanceof NameFinderPool) {
+            return ((NameFinderPool) finder).borrow();
+        }
+        // Appended by the deprecated constructor
+        return (finder instanceof NameFinderME) ? (NameFinderME) finder : null;
+    }
+
+    /**
+     * Obtain the thread safe name finder pool of a model.
+     *
+     * @param language
+     * @param type
+     * @return
+     */
+    public NameFinderPool getNameFinderPool(String language, String type) {
+        final TokenNameFinder finder = getNameFinder(language, type);
+        return (finder instanceof NameFinderPool) ? (NameFinderPool) finder : null;
+    }
+
+    public NameFinderPool getNameFinderPool(String modelName) {
+        final TokenNameFinder finder = getNameFinder(modelName);
+        return (finder instanceof NameFinderPool) ? (NameFinderPool) finder : null;
+    }
+
+    /**
+     * Obtain the thread safe name finder of a model or a dictionary.
+     * A type covered by a {@link PatternNameFinder} is found by the pattern finder.
+     *
+     * @param language
+     * @param type
+     * @return
+     */
+    public TokenNameFinder getNameFinder(String language, String type) {
+        final Snapshot current = snapshot();
+        final LanguageIndex index = current.languages.get(language);
+        if (null == index) {
+            return null;
+        }
+        TokenNameFinder finder = null;
+        if (null != type) {
+            // A pattern type never hits the models
+            final String pattern = index.patterns.get(type.toLowerCase(Locale.ROOT));
+            if (null != pattern) {
+                return current.finders.get(pattern);
+            }
+            final String modelName = index.types.get(type);
+            if (null != modelName) {
+                finder = lookup(current, modelName);
+            }
+        }
+        if (null == finder && null != index.defaultModel) {
             // Try to get default model
-            modelName  = OpenNLP.getModelName(language, null);
-            finder = finders.get(modelName);
+            finder = lookup(current, index.defaultModel);
         }
         return finder;
     }
 
-    public String[] getAllModelNames() {
-        return finders.keySet().toArray(new String[finders.size()]);
+    /**
+     * Obtain all finders of the language from one snapshot.
+     * The pattern finders come first, the models of the types covered by them are skipped.
+     * With a {@link ModelCache} the models of one call are limited to its budget,
+     * the loaded models first, so the models over the budget are not used.
+     *
+     * @param language
+     * @return The pattern finders, then the other finders sorted by model name
+     */
+    public TokenNameFinder[] getLanguageNameFinders(String language) {
+        return getLanguageNameFinders(language, (String[]) null);
+    }
 
+    /**
+     * Obtain the finders of the types from one snapshot, a type covered by a pattern finder
+     * is found by the pattern finder instead of the model.
+     *
+     * @param language
+     * @param types The entity types, or null for all types
+     * @return The pattern finders first, without duplicates
+     */
+    public TokenNameFinder[] getLanguageNameFinders(String language, String... types) {
+        final Snapshot current = snapshot();
+        final LanguageIndex index = current.languages.get(language);
+        if (null == index) {
+            return new TokenNameFinder[0];
+        }
+        final Set<String> patterns = new LinkedHashSet<>();
+        final Set<String> models = new LinkedHashSet<>();
+        if (null == types || types.length == 0) {
+            patterns.addAll(index.patterns.values());
+            for (String modelName : index.names) {
+                if (!index.skipped.contains(modelName)) {
+                    models.add(modelName);
+                }
+            }
+        } else {
+            for (String type : types) {
+                final String pattern = index.patterns.get(type.toLowerCase(Locale.ROOT));
+                if (null != pattern) {
+                    patterns.add(pattern);
+                    continue;
+                }
+                final String modelName = index.types.get(type);
+                if (null != modelName || null != index.defaultModel) {
+                    models.add(null != modelName ? modelName : index.defaultModel);
+                }
+            }
+            models.removeAll(patterns);
+        }
+        final List<TokenNameFinder> finders = new ArrayList<>(patterns.size() + models.size());
+        for (String modelName : patterns) {
+            finders.add(current.finders.get(modelName));
+        }
+        final List<String> cached = new ArrayList<>();
+        for (String modelName : models) {
+            final TokenNameFinder finder = current.finders.get(modelName);
+            if (null != finder) {
+                if (!finders.contains(finder)) {
+                    finders.add(finder);
+                }
+            } else if (null != cache) {
+                cached.add(modelName);
+            }
+        }
+        if (!cached.isEmpty()) {
+            // Within the budget of the cache
+            for (NameFinderPool pool : cache.getAll(cached).values()) {
+                if (!finders.contains(pool)) {
+                    finders.add(pool);
+                }
+            }
+        }
+        return finders.toArray(new TokenNameFinder[finders.size()]);
+    }
+
+    public TokenNameFinder getNameFinder(String modelName) {
+        return lookup(snapshot, modelName);
+    }
+
+    public String[] getAllModelNames() {
+        return snapshot().names.clone();
     }
 
     public String[] getModelNames(String language) {
-        return finders.keySet()
-                .stream()
-                .filter(k -> k.startsWith(language))
-                .toArray(size -> new String[size]);
+        final LanguageIndex index = snapshot().languages.get(language);
+        return null == index ? new String[0] : index.names.clone();
     }
 
     public boolean isEmpty() {
-        return finders.isEmpty();
+        return snapshot().names.length == 0;
     }
 
     public void clear() {
-        finders.clear();
+        update(Map::clear);
+        if (null != cache) {
+            cache.clear();
+        }
+    }
+
+    // The appended finders first, then the cached models
+    private TokenNameFinder lookup(Snapshot current, String modelName) {
+        final TokenNameFinder finder = current.finders.get(modelName);
+        if (null == finder && null != cache) {
+            return cache.get(modelName);
+        }
+        return finder;
     }
 
     protected void finalize() throws Throwable {
         clear();
     }
+
+    /**
+     * Immutable finders by model name, and the model names of the finders
+     * and the cache by language and type.
+     */
+    static final class Snapshot {
+        final Map<String, TokenNameFinder> finders;
+        final Map<String, LanguageIndex> languages = new HashMap<>();
+        final String[] names;
+        // Number of the cache models indexed
+        final int cached;
+
+        Snapshot(Map<String, TokenNameFinder> finders, ModelCache cache) {
+            this.finders = finders;
+            final Set<String> all = new LinkedHashSet<>(finders.keySet());
+            if (null != cache) {
+                this.cached = cache.size();
+                all.addAll(Arrays.asList(cache.getModelNames()));
+            } else {
+                this.cached = 0;
+            }
+            this.names = all.toArray(new String[all.size()]);
+            final Map<String, List<String>> languageNames = new HashMap<>();
+            for (String modelName : names) {
+                // '<language>-ner' or '<language>-ner-<type>'
+                final int pos = modelName.indexOf(MODEL_INFIX);
+                if (pos <= 0) {
+                    continue;
+                }
+                final int end = pos + MODEL_INFIX.length();
+                if (end < modelName.length() && modelName.charAt(end) != '-') {
+                    continue;
+                }
+                final String language = modelName.substring(0, pos);
+                final LanguageIndex index = languages.computeIfAbsent(language, k -> new LanguageIndex());
+                if (end == modelName.length()) {
+                    index.defaultModel = modelName;
+                } else {
+                    index.types.put(modelName.substring(end + 1), modelName);
+                }
+                languageNames.computeIfAbsent(language, k -> new ArrayList<>()).add(modelName);
+            }
+            for (Map.Entry<String, List<String>> e : languageNames.entrySet()) {
+                final String[] sorted = e.getValue().toArray(new String[0]);
+                Arrays.sort(sorted);
+                final LanguageIndex index = languages.get(e.getKey());
+                index.names = sorted;
+                for (String modelName : sorted) {
+                    final TokenNameFinder finder = finders.get(modelName);
+                    if (finder instanceof PatternNameFinder) {
+                        for (String type : ((PatternNameFinder) finder).getTypes()) {
+                            index.patterns.putIfAbsent(type.toLowerCase(Locale.ROOT), modelName);
+                        }
+                    }
+                }
+                for (Map.Entry<String, String> type : index.types.entrySet()) {
+                    final String pattern = index.patterns.get(type.getKey().toLowerCase(Locale.ROOT));
+                    if (null != pattern && !pattern.equals(type.getValue())) {
+                        index.skipped.add(type.getValue());
+                    }
+                }
+                index.skipped.addAll(index.patterns.values());
+            }
+        }
+    }
+
+    static final class LanguageIndex {
+        // Type to the model name
+        final Map<String, String> types = new HashMap<>();
+        String defaultModel;
+        String[] names = new String[0];
+        // Lower case type to the pattern finder covering it
+        final Map<String, String> patterns = new LinkedHashMap<>();
+        // The pattern finders and the models covered by them, not in the main stage
+        final Set<String> skipped = new HashSet<>();
+    }
 }
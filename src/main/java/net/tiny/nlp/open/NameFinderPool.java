@@ -0,0 +1,117 @@
+package net.tiny.nlp.open;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.util.Span;
+
+/**
+ * Thread safe access to an OpenNLP name finder model.
+ *
+ * The {@link TokenNameFinderModel} is immutable and shared once by all threads,
+ * but {@link NameFinderME} keeps beam search and adaptive data state,
+ * so every calling thread gets its own lightweight NameFinderME instance.
+ * {@link #find(String[])} binds an instance to the thread until the adaptive data
+ * is cleared at the end of a document, then it is returned to the pool.
+ * A single sentence is better found by {@link #borrow()} and {@link #release(NameFinderME)},
+ * which bind nothing. All instances are held by the pool, not by the threads,
+ * so an unreachable pool releases the model to the garbage collector.
+ * A closed pool keeps the instances bound before, and hands out unbound ones.
+ *
+ */
+public class NameFinderPool implements TokenNameFinder {
+
+    private final TokenNameFinderModel model;
+    // The idle finders
+    private final Queue<NameFinderME> idle = new ConcurrentLinkedQueue<>();
+    // The finders bound to the threads by thread id
+    private final Map<Long, NameFinderME> bound = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    public NameFinderPool(TokenNameFinderModel model) {
+        if (null == model) {
+            throw new IllegalArgumentException("Null name finder model.");
+        }
+        this.model = model;
+    }
+
+    public TokenNameFinderModel getModel() {
+        return model;
+    }
+
+    /**
+     * Obtain the NameFinderME bound to the current thread, it is bound until
+     * {@link #clearAdaptiveData()} is called by the thread. A closed pool returns an unbound one.
+     *
+     * @return The name finder of current thread, never shared with other threads.
+     */
+    public NameFinderME get() {
+        final Long id = Thread.currentThread().getId();
+        NameFinderME finder = bound.get(id);
+        if (null == finder) {
+            finder = borrow();
+            if (!closed) {
+                bound.put(id, finder);
+            }
+        }
+        return finder;
+    }
+
+    /**
+     * Borrow an idle NameFinderME, it must be returned by {@link #release(NameFinderME)}.
+     *
+     * @return The name finder not used by other threads
+     */
+    public NameFinderME borrow() {
+        final NameFinderME finder = idle.poll();
+        return null != finder ? finder : new NameFinderME(model);
+    }
+
+    /**
+     * Clear the adaptive data of a borrowed NameFinderME and return it to the pool.
+     *
+     * @param finder
+     */
+    public void release(NameFinderME finder) {
+        finder.clearAdaptiveData();
+        if (!closed) {
+            idle.offer(finder);
+        }
+    }
+
+    @Override
+    public Span[] find(String[] tokens) {
+        return get().find(tokens);
+    }
+
+    /**
+     * Clear the adaptive data of the name finder bound to the current thread
+     * and return it to the pool.
+     */
+    @Override
+    public void clearAdaptiveData() {
+        final NameFinderME finder = bound.remove(Thread.currentThread().getId());
+        if (null != finder) {
+            release(finder);
+        }
+    }
+
+    /**
+     * Drop the idle name finders, called when the model is evicted or replaced.
+     * The bound finders are kept until the threads clear them, so a document
+     * in progress keeps its adaptive data, then nothing is pooled any more.
+     */
+    public void close() {
+        closed = true;
+        idle.clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
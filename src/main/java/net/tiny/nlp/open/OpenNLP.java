@@ -1,19 +1,33 @@
 package net.tiny.nlp.open;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import opennlp.tools.langdetect.Language;
 import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.TokenNameFinder;
 import opennlp.tools.namefind.TokenNameFinderModel;
 import opennlp.tools.util.Span;
 
 /**
  * Load model resource take some time.
+ * The language detector and the NER models are loaded on first use,
+ * call {@link OpenNLP#preload(Properties)} to load them concurrently at startup.
  *
  * @see https://opennlp.apache.org/docs/1.9.1/manual/opennlp.html#tools.langdetect
  *
@@ -35,15 +49,169 @@ public class OpenNLP {
     public static final String LANGUAGE_DETECT = "language.detect";
     public static final String DEFAULT_LANG_MAPPER        = DEFAULT_MODEL_PATH + "/language_mapping.txt";
     public static final String DEFAULT_LANG_DETECT_MODEL  = DEFAULT_MODEL_PATH + "/langdetect-183.bin";
+    public static final String LANGUAGE_CACHE = "language.cache";
+    public static final int DEFAULT_LANG_CACHE_SIZE = 4096;
 
-    private static OpenNLP instance = new OpenNLP();
+    static final int BATCH_SIZE = 64;
 
-    private NameFinderFactory factory = new NameFinderFactory();
-    private LanguageWrapper languageDetector = new LanguageWrapper();
+    private static final OpenNLP instance = new OpenNLP();
+    private static final Pattern NON_LETTERS = Pattern.compile("[^a-zA-Z]");
+
+    // The models are loaded on first use or by preload
+    private volatile NameFinderFactory factory;
+    private volatile LanguageWrapper languageDetector;
 
     private OpenNLP() {
     }
 
+    private NameFinderFactory factory() {
+        NameFinderFactory f = factory;
+        if (null == f) {
+            synchronized (this) {
+                f = factory;
+                if (null == f) {
+                    f = new NameFinderFactory();
+                    factory = f;
+                }
+            }
+        }
+        return f;
+    }
+
+    private LanguageWrapper languageDetector() {
+        LanguageWrapper l = languageDetector;
+        if (null == l) {
+            synchronized (this) {
+                l = languageDetector;
+                if (null == l) {
+                    l = new LanguageWrapper();
+                    languageDetector = l;
+                }
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Load the language detector and all configured NER models concurrently.
+     * With {@link ModelCache#MODEL_CACHE_BYTES} the NER models are registered to the cache
+     * and loaded on first use.
+     *
+     * @param param The model parameters, see {@link #MODEL_PATH}, {@link #MODEL_LANGUAGE},
+     *  {@link #MODEL_RESOURCES}, {@link #LANGUAGE_MAPPER} and {@link #LANGUAGE_DETECT}
+     * @return A future completed when all models were loaded
+     */
+    public static CompletableFuture<Void> preload(Properties param) {
+        return preload(param, ForkJoinPool.commonPool());
+    }
+
+    public static CompletableFuture<Void> preload(Properties param, Executor executor) {
+        final CompletableFuture<Void> detector = CompletableFuture.runAsync(() -> {
+            final LanguageWrapper wrapper = new LanguageWrapper(param);
+            synchronized (instance) {
+                if (null == instance.languageDetector) {
+                    instance.languageDetector = wrapper;
+                }
+            }
+        }, executor);
+        final NameFinderFactory factory;
+        synchronized (instance) {
+            if (null == instance.factory) {
+                final boolean cached = !getModelParam(param, ModelCache.MODEL_CACHE_BYTES, "").isEmpty();
+                instance.factory = cached
+                        ? new NameFinderFactory(new ModelCache(ModelCache.getMaxBytes(param)))
+                        : new NameFinderFactory(Collections.emptyMap(), null);
+            }
+            factory = instance.factory;
+        }
+        final List<URL> resources = new ArrayList<>(ModelScanner.discover(param));
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        for (String res : getModelResources(param)) {
+            URL url = loader.getResource(res);
+            if (null != url) {
+                resources.add(url);
+            } else {
+                LOGGER.warning(String.format("Configuration Error: No models in '%s'", res));
+            }
+        }
+        final ModelCache cache = factory.getModelCache();
+        if (null != cache) {
+            // Loaded on first use within the budget
+            cache.register(resources);
+            return detector;
+        }
+        return CompletableFuture.allOf(detector, factory.load(resources, executor));
+    }
+
+    /**
+     * Write the loaded NER models and language detector to a bundle file,
+     * a fresh process loads them by {@link #loadModelBundle(Path)} without parsing the '.bin' models.
+     *
+     * @param file
+     * @return Number of bundled models
+     * @throws IOException
+     */
+    public static int saveModelBundle(Path file) throws IOException {
+        return ModelBundle.write(file, instance.factory(), instance.languageDetector);
+    }
+
+    /**
+     * Load the models of a bundle file written by {@link #saveModelBundle(Path)},
+     * they replace the loaded models of the same names.
+     *
+     * @param file
+     * @return The opened bundle
+     * @throws IOException
+     */
+    public static ModelBundle loadModelBundle(Path file) throws IOException {
+        return loadModelBundle(file, new Properties());
+    }
+
+    /**
+     * Load the models of a bundle file, the NER models are registered to the {@link ModelCache}
+     * and built on first use. When the models were loaded before without a cache,
+     * the NER models are built at once.
+     *
+     * @param file
+     * @param param The model parameters, see {@link ModelCache#MODEL_CACHE_BYTES} and {@link #LANGUAGE_CACHE}
+     * @return The opened bundle
+     * @throws IOException
+     */
+    public static ModelBundle loadModelBundle(Path file, Properties param) throws IOException {
+        final ModelBundle bundle = ModelBundle.open(file);
+        final NameFinderFactory factory;
+        synchronized (instance) {
+            if (null == instance.factory) {
+                instance.factory = new NameFinderFactory(new ModelCache(ModelCache.getMaxBytes(param)));
+            }
+            factory = instance.factory;
+        }
+        final ModelCache cache = factory.getModelCache();
+        if (null != cache) {
+            // The loaded finders of the same names are removed to use the bundled ones
+            factory.swap(Collections.emptyMap(), Arrays.asList(bundle.register(cache)));
+        } else {
+            factory.swap(bundle.getNameFinders(), Collections.emptyList());
+        }
+        final LanguageWrapper wrapper = bundle.createLanguageWrapper(getLanguageCacheSize(param));
+        if (null != wrapper) {
+            instance.languageDetector = wrapper;
+        }
+        return bundle;
+    }
+
+    public static boolean isLanguageDetectorLoaded() {
+        return null != instance.languageDetector;
+    }
+
+    public static String[] getLoadedModels() {
+        final NameFinderFactory f = instance.factory;
+        if (null == f) {
+            return new String[0];
+        }
+        return f.getAllModelNames();
+    }
+
     public static String getModelPath(Properties args) {
         return getModelParam(args, MODEL_PATH, DEFAULT_MODEL_PATH);
     }
@@ -60,6 +228,10 @@ public class OpenNLP {
         return getModelParam(args, LANGUAGE_DETECT, DEFAULT_LANG_DETECT_MODEL);
     }
 
+    public static int getLanguageCacheSize(Properties args) {
+        return Integer.parseInt(getModelParam(args, LANGUAGE_CACHE, String.valueOf(DEFAULT_LANG_CACHE_SIZE)));
+    }
+
     public static String[] getModelResources(Properties args) {
         String param = "";
         if (args != null && !args.isEmpty()) {
@@ -99,58 +271,295 @@ public class OpenNLP {
     }
 
     public static NameFinderME loadNameFinders(URL url) {
+        TokenNameFinderModel model = loadNameFinderModel(url);
+        if (null == model)
+            return null;
+        // 返回创建的NameFinderME实例
+        return new NameFinderME(model);
+    }
+
+    public static TokenNameFinderModel loadNameFinderModel(URL url) {
         if (null == url)
             return null;
-        try {
-            // 返回创建的NameFinderME实例
-            return new NameFinderME(new TokenNameFinderModel(url.openStream()));
+        try (InputStream in = url.openStream()) {
+            return new TokenNameFinderModel(in);
         } catch (IOException e) {
+            LOGGER.warning(String.format("Load '%s' error : %s", url, e.getMessage()));
             return null;
         }
     }
 
     public static String guestModelName(URL url) {
         String res = url.getPath();
-        String[] array = res.split("[^a-zA-Z]");
+        String[] array = NON_LETTERS.split(res);
         int pos = array.length;
         while (!"ner".equals(array[--pos]) && pos > 1)
             ;
         if (pos == (array.length - 1) || "bin".equals(array[pos + 1]) || array[pos + 1].isEmpty()) {
-            return String.format("%s-ner", array[pos - 1]);
+            return getModelName(array[pos - 1], null);
         }
-        return String.format("%s-ner-%s", array[pos - 1], array[pos + 1]);
+        return getModelName(array[pos - 1], array[pos + 1]);
     }
 
     public static String getModelName(String language, String type) {
-        final String modelName;
         if (null != type) {
-            modelName = String.format("%s-ner-%s", language, type);
-        } else {
-            modelName = String.format("%s-ner", language);
+            return language + NameFinderFactory.MODEL_INFIX + "-" + type;
         }
-        return modelName;
+        return language + NameFinderFactory.MODEL_INFIX;
     }
 
     public static void appendModels(String... resources) {
-        instance.factory.concat(new NameFinderFactory(resources));
+        instance.factory().concat(new NameFinderFactory(resources));
+    }
+
+    /**
+     * Watch the NER models of the language in a directory, the new and modified
+     * models are swapped in without a restart.
+     *
+     * @param directory
+     * @param language
+     * @return The started registry, close it to stop watching
+     * @throws IOException
+     */
+    public static ModelRegistry watchModels(Path directory, String language) throws IOException {
+        return new ModelRegistry(instance.factory(), directory, language).start();
+    }
+
+    /**
+     * Append a thread safe name finder like a {@link GazetteerNameFinder},
+     * it is used with the models of the language.
+     *
+     * @param modelName The model name, like 'ja-ner-gazetteer'
+     * @param finder
+     */
+    public static void appendNameFinder(String modelName, TokenNameFinder finder) {
+        instance.factory().append(modelName, finder);
+    }
+
+    /**
+     * Remove a name finder appended by {@link #appendNameFinder(String, TokenNameFinder)}.
+     *
+     * @param modelName The model name, like 'ja-ner-gazetteer'
+     * @return The removed finder, or null
+     */
+    public static TokenNameFinder removeNameFinder(String modelName) {
+        return instance.factory().remove(modelName);
     }
 
     public static Extraction extract(String language, String type, String[] sentence) {
+        final TokenNameFinder finder = getNameFinder(language, type);
+        // 给定一个被分成单词的句子，提取命名表达式
+        return extract(find(finder, sentence), sentence, new Extraction());
+    }
+
+    /**
+     * Extract named entities from many tokenized sentences.
+     * The sentences are independent each other, they are split into batches
+     * and run on the common fork-join pool. The adaptive data of the name finder
+     * is cleared after each sentence, one sentence never affects another.
+     *
+     * @param language
+     * @param type
+     * @param sentences Tokenized sentences
+     * @return The extractions in the same order of the sentences
+     */
+    public static List<Extraction> extractAll(String language, String type, List<String[]> sentences) {
+        return extractAll(language, type, sentences, ForkJoinPool.commonPool());
+    }
+
+    public static List<Extraction> extractAll(String language, String type, List<String[]> sentences, Executor executor) {
+        final TokenNameFinder shared = getNameFinder(language, type);
+        final String[][] array = sentences.toArray(new String[sentences.size()][]);
+        final Extraction[] results = new Extraction[array.length];
+        final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < array.length; from += BATCH_SIZE) {
+            final int start = from;
+            final int end = Math.min(array.length, from + BATCH_SIZE);
+            tasks.add(CompletableFuture.runAsync(() -> {
+                final TokenNameFinder finder = borrow(shared);
+                try {
+                    for (int i = start; i < end; i++) {
+                        results[i] = extract(finder, array[i], new Extraction());
+                        finder.clearAdaptiveData();
+                    }
+                } finally {
+                    release(shared, finder);
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[tasks.size()])).join();
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Extract named entities from many documents.
+     * The sentences of a document are extracted in order by one thread,
+     * the adaptive data of the name finder is cleared at the end of each document.
+     *
+     * @param language
+     * @param type
+     * @param documents Documents of tokenized sentences
+     * @return One extraction per document in the same order of the documents
+     */
+    public static List<Extraction> extractDocuments(String language, String type, List<List<String[]>> documents) {
+        return extractDocuments(language, type, documents, ForkJoinPool.commonPool());
+    }
+
+    public static List<Extraction> extractDocuments(String language, String type, List<List<String[]>> documents, Executor executor) {
+        final TokenNameFinder shared = getNameFinder(language, type);
+        final List<CompletableFuture<Extraction>> tasks = new ArrayList<>(documents.size());
+        for (List<String[]> document : documents) {
+            tasks.add(CompletableFuture.supplyAsync(() -> {
+                final TokenNameFinder finder = borrow(shared);
+                final Extraction extraction = new Extraction();
+                try {
+                    int index = 0;
+                    for (String[] sentence : document) {
+                        extract(finder.find(sentence), sentence, index++, extraction);
+                    }
+                } finally {
+                    release(shared, finder);
+                }
+                return extraction;
+            }, executor));
+        }
+        return tasks.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Extract all types of named entities with every model of the language.
+     * The models run concurrently on the common fork-join pool and
+     * the overlapping spans are merged by probability.
+     * A {@link PatternNameFinder} runs first on the calling thread,
+     * the models of the types covered by its patterns are skipped.
+     *
+     * @param language
+     * @param sentence Tokenized sentence
+     * @return The merged extraction of all models
+     */
+    public static Extraction extractAllTypes(String language, String[] sentence) {
+        return extractAllTypes(language, sentence, ForkJoinPool.commonPool());
+    }
+
+    public static Extraction extractAllTypes(String language, String[] sentence, Executor executor) {
         if (!hasFinder()) {
             throw new IllegalStateException("Not found a OpenNLP NameFinder.");
         }
-        final NameFinderME finder = instance.factory.getNameFinders(language, type);
-        // 给定一个被分成单词的句子，提取命名表达式
-        final Span[] spans = finder.find(sentence);
-        final Extraction extraction = new Extraction();
+        final TokenNameFinder[] finders = getNameFinders(language);
+        if (finders.length == 0) {
+            throw new IllegalArgumentException(String.format("Not found a OpenNLP '%s' model.", getModelName(language, null)));
+        }
+        final List<CompletableFuture<Span[]>> tasks = new ArrayList<>(finders.length - 1);
+        for (int i = 1; i < finders.length; i++) {
+            final TokenNameFinder finder = finders[i];
+            tasks.add(CompletableFuture.supplyAsync(() -> find(finder, sentence), executor));
+        }
+        // The calling thread runs the first model
+        final Span[][] spans = new Span[finders.length][];
+        spans[0] = find(finders[0], sentence);
+        for (int i = 1; i < finders.length; i++) {
+            spans[i] = tasks.get(i - 1).join();
+        }
+        return extract(mergeSpans(sentence.length, spans), sentence, new Extraction());
+    }
+
+    /**
+     * Merge the spans of many models, an overlapped span is dropped
+     * when a span of higher probability (or longer one) covers the same tokens.
+     *
+     * @param length The token length of sentence
+     * @param spans
+     * @return The merged spans sorted by start position
+     */
+    static Span[] mergeSpans(int length, Span[]... spans) {
+        final List<Span> all = new ArrayList<>();
+        for (Span[] array : spans) {
+            all.addAll(Arrays.asList(array));
+        }
+        all.sort((a, b) -> {
+            int c = Double.compare(b.getProb(), a.getProb());
+            return c != 0 ? c : Integer.compare(b.length(), a.length());
+        });
+        final boolean[] used = new boolean[length];
+        final List<Span> merged = new ArrayList<>(all.size());
+        for (Span span : all) {
+            boolean free = true;
+            for (int i = span.getStart(); i < span.getEnd() && free; i++) {
+                free = !used[i];
+            }
+            if (free) {
+                Arrays.fill(used, span.getStart(), span.getEnd(), true);
+                merged.add(span);
+            }
+        }
+        merged.sort((a, b) -> Integer.compare(a.getStart(), b.getStart()));
+        return merged.toArray(new Span[merged.size()]);
+    }
+
+    // Find in a single sentence by a borrowed finder
+    private static Span[] find(TokenNameFinder shared, String[] sentence) {
+        final TokenNameFinder finder = borrow(shared);
+        try {
+            return finder.find(sentence);
+        } finally {
+            release(shared, finder);
+        }
+    }
+
+    static Extraction extract(TokenNameFinder finder, String[] sentence, Extraction extraction) {
+        return extract(finder.find(sentence), sentence, extraction);
+    }
+
+    static Extraction extract(Span[] spans, String[] sentence, Extraction extraction) {
+        return extract(spans, sentence, 0, extraction);
+    }
+
+    // The spans of the sentence at the index of a document
+    static Extraction extract(Span[] spans, String[] sentence, int index, Extraction extraction) {
         for (Span span : spans) {
-            extraction.append(span.getType(), span2string(span, sentence));
+            extraction.append(span, sentence, index);
         }
         return extraction;
     }
 
+    static TokenNameFinder getNameFinder(String language, String type) {
+        if (!hasFinder()) {
+            throw new IllegalStateException("Not found a OpenNLP NameFinder.");
+        }
+        final TokenNameFinder finder = instance.factory().getNameFinder(language, type);
+        if (null == finder) {
+            throw new IllegalArgumentException(String.format("Not found a OpenNLP '%s' model.", getModelName(language, type)));
+        }
+        return finder;
+    }
+
+    // The name finders of all models and dictionaries of the language, the pattern finders first
+    static TokenNameFinder[] getNameFinders(String language) {
+        return instance.factory().getLanguageNameFinders(language);
+    }
+
+    static TokenNameFinder[] getNameFinders(String language, String... types) {
+        return instance.factory().getLanguageNameFinders(language, types);
+    }
+
+    // An idle NameFinderME of the pool, or the thread safe finder itself
+    private static TokenNameFinder borrow(TokenNameFinder finder) {
+        return (finder instanceof NameFinderPool) ? ((NameFinderPool) finder).borrow() : finder;
+    }
+
+    // Clear the adaptive data and return the borrowed NameFinderME to the pool
+    private static void release(TokenNameFinder shared, TokenNameFinder finder) {
+        if (shared instanceof NameFinderPool) {
+            ((NameFinderPool) shared).release((NameFinderME) finder);
+        } else {
+            finder.clearAdaptiveData();
+        }
+    }
+
     static boolean hasFinder() {
-        return !instance.factory.isEmpty();
+        return !instance.factory().isEmpty();
     }
     static String span2string(Span span, String[] sentence) {
         StringBuilder sb = new StringBuilder();
@@ -164,12 +573,9 @@ public class OpenNLP {
     }
 
     public static void parse(String language, String type, String[] sentence, PrintStream out) {
-        if (!hasFinder()) {
-            throw new IllegalStateException("Not found a OpenNLP NameFinder.");
-        }
-        final NameFinderME finder = instance.factory.getNameFinders(language, type);
+        final TokenNameFinder finder = getNameFinder(language, type);
         // 给定一个被分成单词的句子，提取命名表达式
-        final Span[] spans = finder.find(sentence);
+        final Span[] spans = find(finder, sentence);
         for (Span span : spans) {
             out.printf("Span(%d,%d,%s[%.4f])=\"%s\"\n", span.getStart(), span.getEnd(),
                     span.getType(),	span.getProb(), span2string(span, sentence));
@@ -177,38 +583,83 @@ public class OpenNLP {
     }
 
     public static String[] getLanguagecodes() {
-        return instance.languageDetector.getCodes();
+        return instance.languageDetector().getCodes();
     }
 
     public static String getLanguage(String code) {
-        return instance.languageDetector.getLanguage(code);
+        return instance.languageDetector().getLanguage(code);
     }
 
     public static String guestLanguage(String text) {
-        Language best = instance.languageDetector.guestLanguage(text);
+        Language best = instance.languageDetector().guestLanguage(text);
         return getLanguage(best.getLang());
     }
 
+    /**
+     * Detect the language code of a text.
+     *
+     * @param text
+     * @return The ISO 639-3 code or null
+     */
+    public static String guestLanguageCode(String text) {
+        Language best = instance.languageDetector().guestLanguage(text);
+        return null == best ? null : best.getLang();
+    }
+
+    /**
+     * Detect the languages of many texts in parallel.
+     *
+     * @param texts
+     * @return The language names in the same order of the texts
+     */
+    public static String[] guestLanguages(Iterable<String> texts) {
+        return guestLanguages(texts, ForkJoinPool.commonPool());
+    }
+
+    public static String[] guestLanguages(Iterable<String> texts, Executor executor) {
+        return instance.languageDetector().guestLanguages(texts, executor).stream()
+                .map(l -> null == l ? null : getLanguage(l.getLang()))
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Detect the languages of a stream of texts in parallel, the results are
+     * delivered per batch while the texts are read.
+     *
+     * @param texts The texts, an unbounded stream can be passed by <code>stream::iterator</code>
+     * @param executor
+     * @param results Receives the language names of each batch in the order of the texts
+     */
+    public static void guestLanguages(Iterable<String> texts, Executor executor, Consumer<String[]> results) {
+        instance.languageDetector().guestLanguages(texts, executor, langs -> results.accept(langs.stream()
+                .map(l -> null == l ? null : getLanguage(l.getLang()))
+                .toArray(String[]::new)));
+    }
+
     public static String[] predictLanguage(String text) {
         return predictLanguage(text, false);
     }
 
     public static String[] predictLanguage(String text, boolean all) {
-        Language[] langs = instance.languageDetector.predictLanguages(text);
+        Language[] langs = instance.languageDetector().predictLanguages(text, all ? Integer.MAX_VALUE : 3);
         if (null == langs || langs.length == 0)
             return new String[0];
-        long max = 3;
-        if (all) {
-            max = langs.length;
-        }
         return Arrays.stream(langs)
-                .limit(max)
                 .map(l -> getLanguage(l.getLang()))
                 .toArray(String[]::new);
     }
 
+    /**
+     * Hit rate of the language detection cache.
+     *
+     * @return The hits / (hits + misses)
+     */
+    public static double getLanguageCacheHitRate() {
+        return instance.languageDetector().getCacheHitRate();
+    }
+
     public static void predictLanguage(String text, PrintStream out) {
-        Language[] langs = instance.languageDetector.predictLanguages(text);
+        Language[] langs = instance.languageDetector().predictLanguages(text);
         if (null == langs || langs.length == 0)
             return;
         out.println(text);
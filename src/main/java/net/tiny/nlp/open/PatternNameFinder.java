@@ -0,0 +1,628 @@
+package net.tiny.nlp.open;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.util.Span;
+
+/**
+ * Rule based name finder of the pattern shaped entities like dates, numbers and contacts.
+ *
+ * The patterns of all types are compiled into one DFA, the chars are mapped to
+ * the dense classes and a step is one lookup of an int table. A pattern matches
+ * whole tokens, the tokens are separated by one blank like '\d+ 月 \d+ 日'.
+ * The syntax is a small subset of the regular expressions:
+ * <pre>
+ * c  \c  .  [a-z]  [^a-z]  \d (with full width digits)  \w
+ * xy  x|y  (x)  x*  x+  x?  x{m}  x{m,}  x{m,n}
+ * </pre>
+ * The longest match from the left is found, the pattern added first wins
+ * a match of the same length. The DFA is restarted at each token where no match
+ * was found, so a sentence costs the tokens times the length scanned before the DFA
+ * dies. Most tokens die at the first char, the cost grows to quadratic only with
+ * the patterns repeating over the tokens like 'x( y)*'.
+ * Appended to a {@link NameFinderFactory} it is a pre-stage, the models of the types
+ * covered by the patterns are skipped when all finders of the language are used.
+ * The finder is immutable and thread safe.
+ *
+ */
+public class PatternNameFinder implements TokenNameFinder {
+
+    public static final String JAPANESE_DATE = "\\d{1,4} 年( \\d{1,2} 月( \\d{1,2} 日)?)?|\\d{1,2} 月 \\d{1,2} 日";
+    public static final String NUMBER = "[+\\-]?\\d+([.,]\\d+)*";
+    public static final String PHONE = "\\+?\\d{1,4}-\\d{1,4}-\\d{3,4}";
+    public static final String EMAIL = "[\\w.+\\-]+@[\\w\\-]+(\\.[\\w\\-]+)+";
+
+    // Max states of the DFA
+    static final int MAX_STATES = 10000;
+    private static final int DEAD = -1;
+    private static final char SEPARATOR = ' ';
+
+    private final String[] types;
+    // Char to class
+    private final char[] classes;
+    private final int classCount;
+    // Next state of [state * classCount + class]
+    private final int[] table;
+    // Type of the accepting state, or -1
+    private final int[] accepts;
+
+    private PatternNameFinder(String[] types, char[] classes, int classCount, int[] table, int[] accepts) {
+        this.types = types;
+        this.classes = classes;
+        this.classCount = classCount;
+        this.table = table;
+        this.accepts = accepts;
+    }
+
+    /**
+     * @return Number of DFA states
+     */
+    public int states() {
+        return accepts.length;
+    }
+
+    public String[] getTypes() {
+        return types.clone();
+    }
+
+    @Override
+    public Span[] find(String[] tokens) {
+        final List<Span> spans = new ArrayList<>();
+        int t = 0;
+        while (t < tokens.length) {
+            int state = 0;
+            int end = -1;
+            int type = -1;
+            for (int u = t; u < tokens.length && state != DEAD; u++) {
+                if (u > t) {
+                    state = step(state, SEPARATOR);
+                }
+                final String token = tokens[u];
+                for (int i = 0; i < token.length() && state != DEAD; i++) {
+                    state = step(state, token.charAt(i));
+                }
+                if (state != DEAD && accepts[state] >= 0) {
+                    end = u + 1;
+                    type = accepts[state];
+                }
+            }
+            if (end > t) {
+                spans.add(new Span(t, end, types[type], 1d));
+                t = end;
+            } else {
+                t++;
+            }
+        }
+        return spans.toArray(new Span[spans.size()]);
+    }
+
+    @Override
+    public void clearAdaptiveData() {
+        // No adaptive data
+    }
+
+    private int step(int state, char c) {
+        return table[state * classCount + classes[c]];
+    }
+
+    /**
+     * Collect the patterns and compile them into a DFA.
+     */
+    public static class Builder {
+        private final List<String> types = new ArrayList<>();
+        private final List<Node> patterns = new ArrayList<>();
+        private final List<Integer> patternTypes = new ArrayList<>();
+
+        /**
+         * Add a pattern of the type.
+         *
+         * @param type
+         * @param pattern
+         * @return
+         * @throws IllegalArgumentException The syntax error
+         */
+        public Builder add(String type, String pattern) {
+            final Node node = new Parser(pattern).parse();
+            int typeId = types.indexOf(type);
+            if (typeId < 0) {
+                typeId = types.size();
+                types.add(type);
+            }
+            patterns.add(node);
+            patternTypes.add(typeId);
+            return this;
+        }
+
+        public PatternNameFinder build() {
+            // The char classes split by the bounds of all char sets
+            final TreeSet<Integer> bounds = new TreeSet<>();
+            bounds.add(0);
+            for (Node node : patterns) {
+                node.bounds(bounds);
+            }
+            bounds.add(Character.MAX_VALUE + 1);
+            final int[] starts = bounds.stream().mapToInt(Integer::intValue).toArray();
+            final int classCount = starts.length - 1;
+            final char[] classes = new char[Character.MAX_VALUE + 1];
+            for (int k = 0; k < classCount; k++) {
+                Arrays.fill(classes, starts[k], starts[k + 1], (char) k);
+            }
+            // One NFA of all patterns
+            final Nfa nfa = new Nfa();
+            final int start = nfa.state();
+            final Map<Integer, Integer> finals = new HashMap<>();
+            for (int p = 0; p < patterns.size(); p++) {
+                final int[] fragment = patterns.get(p).compile(nfa);
+                nfa.epsilon(start, fragment[0]);
+                finals.put(fragment[1], p);
+            }
+            // Subset construction
+            final List<BitSet> states = new ArrayList<>();
+            final Map<BitSet, Integer> index = new HashMap<>();
+            final BitSet initial = new BitSet();
+            initial.set(start);
+            nfa.closure(initial);
+            states.add(initial);
+            index.put(initial, 0);
+            final List<int[]> rows = new ArrayList<>();
+            final List<Integer> accepts = new ArrayList<>();
+            final ArrayDeque<Integer> queue = new ArrayDeque<>();
+            queue.add(0);
+            while (!queue.isEmpty()) {
+                final int s = queue.poll();
+                final BitSet set = states.get(s);
+                final int[] row = new int[classCount];
+                for (int k = 0; k < classCount; k++) {
+                    final BitSet next = nfa.move(set, starts[k]);
+                    if (next.isEmpty()) {
+                        row[k] = DEAD;
+                        continue;
+                    }
+                    Integer target = index.get(next);
+                    if (null == target) {
+                        target = states.size();
+                        if (target >= MAX_STATES) {
+                            throw new IllegalArgumentException(String.format("Too many DFA states over %d.", MAX_STATES));
+                        }
+                        states.add(next);
+                        index.put(next, target);
+                        queue.add(target);
+                    }
+                    row[k] = target;
+                }
+                while (rows.size() <= s) {
+                    rows.add(null);
+                    accepts.add(-1);
+                }
+                rows.set(s, row);
+                // The pattern added first wins
+                int pattern = Integer.MAX_VALUE;
+                for (int q = set.nextSetBit(0); q >= 0; q = set.nextSetBit(q + 1)) {
+                    final Integer p = finals.get(q);
+                    if (null != p && p < pattern) {
+                        pattern = p;
+                    }
+                }
+                accepts.set(s, pattern == Integer.MAX_VALUE ? -1 : patternTypes.get(pattern));
+            }
+            final int[] table = new int[states.size() * classCount];
+            for (int s = 0; s < states.size(); s++) {
+                System.arraycopy(rows.get(s), 0, table, s * classCount, classCount);
+            }
+            return new PatternNameFinder(types.toArray(new String[types.size()]), classes, classCount, table,
+                    accepts.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Thompson NFA, a state has epsilon edges and at most one char set edge.
+     */
+    static class Nfa {
+        final List<int[]> sets = new ArrayList<>();
+        final List<Integer> targets = new ArrayList<>();
+        final List<List<Integer>> epsilons = new ArrayList<>();
+
+        int state() {
+            sets.add(null);
+            targets.add(-1);
+            epsilons.add(new ArrayList<>());
+            return sets.size() - 1;
+        }
+
+        void epsilon(int from, int to) {
+            epsilons.get(from).add(to);
+        }
+
+        void edge(int from, int[] ranges, int to) {
+            sets.set(from, ranges);
+            targets.set(from, to);
+        }
+
+        void closure(BitSet set) {
+            final ArrayDeque<Integer> stack = new ArrayDeque<>();
+            for (int q = set.nextSetBit(0); q >= 0; q = set.nextSetBit(q + 1)) {
+                stack.push(q);
+            }
+            while (!stack.isEmpty()) {
+                for (int next : epsilons.get(stack.pop())) {
+                    if (!set.get(next)) {
+                        set.set(next);
+                        stack.push(next);
+                    }
+                }
+            }
+        }
+
+        BitSet move(BitSet set, int c) {
+            final BitSet next = new BitSet();
+            for (int q = set.nextSetBit(0); q >= 0; q = set.nextSetBit(q + 1)) {
+                final int[] ranges = sets.get(q);
+                if (null != ranges && Ranges.contains(ranges, c)) {
+                    next.set(targets.get(q));
+                }
+            }
+            closure(next);
+            return next;
+        }
+    }
+
+    /**
+     * Syntax tree of a pattern.
+     */
+    static abstract class Node {
+        // The start and end states of the fragment
+        abstract int[] compile(Nfa nfa);
+
+        abstract void bounds(TreeSet<Integer> bounds);
+    }
+
+    static class CharSet extends Node {
+        final int[] ranges;
+
+        CharSet(int[] ranges) {
+            this.ranges = ranges;
+        }
+
+        @Override
+        int[] compile(Nfa nfa) {
+            final int start = nfa.state();
+            final int end = nfa.state();
+            nfa.edge(start, ranges, end);
+            return new int[] {start, end};
+        }
+
+        @Override
+        void bounds(TreeSet<Integer> bounds) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                bounds.add(ranges[i]);
+                bounds.add(ranges[i + 1] + 1);
+            }
+        }
+    }
+
+    static class Sequence extends Node {
+        final List<Node> nodes;
+        final boolean alternative;
+
+        Sequence(List<Node> nodes, boolean alternative) {
+            this.nodes = nodes;
+            this.alternative = alternative;
+        }
+
+        @Override
+        int[] compile(Nfa nfa) {
+            final int start = nfa.state();
+            final int end = nfa.state();
+            int last = start;
+            for (Node node : nodes) {
+                final int[] fragment = node.compile(nfa);
+                if (alternative) {
+                    nfa.epsilon(start, fragment[0]);
+                    nfa.epsilon(fragment[1], end);
+                } else {
+                    nfa.epsilon(last, fragment[0]);
+                    last = fragment[1];
+                }
+            }
+            if (!alternative) {
+                nfa.epsilon(last, end);
+            }
+            return new int[] {start, end};
+        }
+
+        @Override
+        void bounds(TreeSet<Integer> bounds) {
+            for (Node node : nodes) {
+                node.bounds(bounds);
+            }
+        }
+    }
+
+    static class Repeat extends Node {
+        final Node node;
+        final int min;
+        // -1 is unbounded
+        final int max;
+
+        Repeat(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        int[] compile(Nfa nfa) {
+            final int start = nfa.state();
+            int last = start;
+            for (int i = 0; i < min; i++) {
+                final int[] fragment = node.compile(nfa);
+                nfa.epsilon(last, fragment[0]);
+                last = fragment[1];
+            }
+            final int end = nfa.state();
+            if (max < 0) {
+                final int[] fragment = node.compile(nfa);
+                nfa.epsilon(last, fragment[0]);
+                nfa.epsilon(fragment[1], fragment[0]);
+                nfa.epsilon(fragment[1], end);
+            } else {
+                for (int i = min; i < max; i++) {
+                    final int[] fragment = node.compile(nfa);
+                    nfa.epsilon(last, fragment[0]);
+                    nfa.epsilon(last, end);
+                    last = fragment[1];
+                }
+            }
+            nfa.epsilon(last, end);
+            return new int[] {start, end};
+        }
+
+        @Override
+        void bounds(TreeSet<Integer> bounds) {
+            node.bounds(bounds);
+        }
+    }
+
+    /**
+     * Recursive descent parser of the pattern.
+     */
+    static class Parser {
+        private final String pattern;
+        private int pos = 0;
+
+        Parser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        Node parse() {
+            final Node node = alternative();
+            if (pos < pattern.length()) {
+                throw error("Unexpected ')'");
+            }
+            return node;
+        }
+
+        private Node alternative() {
+            final List<Node> nodes = new ArrayList<>();
+            nodes.add(sequence());
+            while (peek('|')) {
+                pos++;
+                nodes.add(sequence());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Sequence(nodes, true);
+        }
+
+        private Node sequence() {
+            final List<Node> nodes = new ArrayList<>();
+            while (pos < pattern.length() && !peek('|') && !peek(')')) {
+                nodes.add(repeat());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Sequence(nodes, false);
+        }
+
+        private Node repeat() {
+            Node node = atom();
+            while (pos < pattern.length()) {
+                final char c = pattern.charAt(pos);
+                if (c == '*') {
+                    node = new Repeat(node, 0, -1);
+                } else if (c == '+') {
+                    node = new Repeat(node, 1, -1);
+                } else if (c == '?') {
+                    node = new Repeat(node, 0, 1);
+                } else if (c == '{') {
+                    node = bounded(node);
+                    continue;
+                } else {
+                    break;
+                }
+                pos++;
+            }
+            return node;
+        }
+
+        private Node bounded(Node node) {
+            final int close = pattern.indexOf('}', pos);
+            if (close < 0) {
+                throw error("Missing '}'");
+            }
+            final String[] values = pattern.substring(pos + 1, close).split(",", -1);
+            try {
+                final int min = Integer.parseInt(values[0].trim());
+                final int max = values.length == 1 ? min
+                        : values[1].trim().isEmpty() ? -1 : Integer.parseInt(values[1].trim());
+                if (values.length > 2 || min < 0 || (max >= 0 && max < min)) {
+                    throw error("Illegal repetition");
+                }
+                pos = close + 1;
+                return new Repeat(node, min, max);
+            } catch (NumberFormatException e) {
+                throw error("Illegal repetition");
+            }
+        }
+
+        private Node atom() {
+            final char c = pattern.charAt(pos++);
+            switch (c) {
+            case '(':
+                final Node node = alternative();
+                if (!peek(')')) {
+                    throw error("Missing ')'");
+                }
+                pos++;
+                return node;
+            case '[':
+                return new CharSet(charClass());
+            case '.':
+                // Any char in a token
+                return new CharSet(Ranges.complement(new int[] {SEPARATOR, SEPARATOR}));
+            case '\\':
+                return new CharSet(escape());
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+            case ')':
+            case '|':
+                throw error(String.format("Unexpected '%c'", c));
+            default:
+                return new CharSet(new int[] {c, c});
+            }
+        }
+
+        private int[] charClass() {
+            final boolean negate = peek('^');
+            if (negate) {
+                pos++;
+            }
+            final List<int[]> sets = new ArrayList<>();
+            boolean first = true;
+            while (pos < pattern.length() && (first || !peek(']'))) {
+                first = false;
+                int[] set;
+                char c = pattern.charAt(pos++);
+                if (c == '\\') {
+                    set = escape();
+                } else {
+                    set = new int[] {c, c};
+                }
+                if (set.length == 2 && set[0] == set[1] && peek('-')
+                        && pos + 1 < pattern.length() && pattern.charAt(pos + 1) != ']') {
+                    pos++;
+                    char to = pattern.charAt(pos++);
+                    if (to == '\\') {
+                        to = (char) escape()[0];
+                    }
+                    if (to < set[0]) {
+                        throw error("Illegal range");
+                    }
+                    set = new int[] {set[0], to};
+                }
+                sets.add(set);
+            }
+            if (!peek(']')) {
+                throw error("Missing ']'");
+            }
+            pos++;
+            if (negate) {
+                // The negated class does not match the token separator
+                sets.add(new int[] {SEPARATOR, SEPARATOR});
+                return Ranges.complement(Ranges.union(sets));
+            }
+            return Ranges.union(sets);
+        }
+
+        private int[] escape() {
+            if (pos >= pattern.length()) {
+                throw error("Trailing '\\'");
+            }
+            final char c = pattern.charAt(pos++);
+            switch (c) {
+            case 'd':
+                return new int[] {'0', '9', '０', '９'};
+            case 'w':
+                return new int[] {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+            case 't':
+                return new int[] {'\t', '\t'};
+            default:
+                return new int[] {c, c};
+            }
+        }
+
+        private boolean peek(char c) {
+            return pos < pattern.length() && pattern.charAt(pos) == c;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(String.format("%s at %d in pattern '%s'", message, pos, pattern));
+        }
+    }
+
+    /**
+     * Sorted disjoint ranges of chars, [from0, to0, from1, to1, ...] inclusive.
+     */
+    static class Ranges {
+
+        static boolean contains(int[] ranges, int c) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (c < ranges[i]) {
+                    return false;
+                }
+                if (c <= ranges[i + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        static int[] union(List<int[]> sets) {
+            final List<int[]> pairs = new ArrayList<>();
+            for (int[] set : sets) {
+                for (int i = 0; i < set.length; i += 2) {
+                    pairs.add(new int[] {set[i], set[i + 1]});
+                }
+            }
+            pairs.sort((a, b) -> Integer.compare(a[0], b[0]));
+            final List<int[]> merged = new ArrayList<>();
+            for (int[] pair : pairs) {
+                final int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                if (null != last && pair[0] <= last[1] + 1) {
+                    last[1] = Math.max(last[1], pair[1]);
+                } else {
+                    merged.add(pair);
+                }
+            }
+            final int[] ranges = new int[merged.size() * 2];
+            for (int i = 0; i < merged.size(); i++) {
+                ranges[i * 2] = merged.get(i)[0];
+                ranges[i * 2 + 1] = merged.get(i)[1];
+            }
+            return ranges;
+        }
+
+        static int[] complement(int[] ranges) {
+            final List<Integer> result = new ArrayList<>();
+            int next = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > next) {
+                    result.add(next);
+                    result.add(ranges[i] - 1);
+                }
+                next = ranges[i + 1] + 1;
+            }
+            if (next <= Character.MAX_VALUE) {
+                result.add(next);
+                result.add((int) Character.MAX_VALUE);
+            }
+            return result.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package net.tiny.nlp.open;
+
+import java.lang.Character.UnicodeScript;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pre-classifier of the language by the histogram of Unicode scripts.
+ *
+ * A text written in a script used by one language (Kana, Hangul, Thai, ...)
+ * is classified without the n-gram model. A text of a script shared by some
+ * languages (Cyrillic, Arabic, Devanagari, Han only) is restricted to those languages.
+ * The Latin texts are ambiguous and need the model.
+ *
+ */
+final class ScriptClassifier {
+
+    // Max code points to scan
+    static final int MAX_SCAN = 1024;
+    // Min ratio of the script letters in all letters
+    static final double DOMINANT = 0.9d;
+
+    // Shared by all calls, unmodifiable
+    static final List<String> CYRILLIC = candidates("rus", "ukr", "bel", "bul", "srp", "mkd", "kaz", "kir", "tat", "bak", "tgk", "mon", "che", "sah", "chv", "oss", "udm");
+    static final List<String> ARABIC = candidates("ara", "arb", "arz", "pes", "fas", "urd", "pus", "pnb", "ckb", "uig", "snd");
+    static final List<String> DEVANAGARI = candidates("hin", "mar", "nep", "npi", "san", "bho", "mai", "new");
+    static final List<String> HAN = candidates("jpn", "zho", "cmn");
+    private static final List<String> JAPANESE = candidates("jpn");
+    private static final List<String> KOREAN = candidates("kor");
+    private static final List<String> THAI = candidates("tha");
+    private static final List<String> GREEK = candidates("ell");
+    private static final List<String> HEBREW = candidates("heb");
+    private static final List<String> ARMENIAN = candidates("hye");
+    private static final List<String> GEORGIAN = candidates("kat");
+    private static final UnicodeScript[] SCRIPTS = UnicodeScript.values();
+
+    private ScriptClassifier() {}
+
+    /**
+     * Classify the text by scripts in one pass.
+     *
+     * @param text
+     * @return One language code when the script decides the language,
+     *  the candidate codes when the script is shared, or null when ambiguous
+     */
+    static List<String> classify(CharSequence text) {
+        int letters = 0;
+        int kana = 0;
+        int han = 0;
+        int hangul = 0;
+        final int[] counts = new int[SCRIPTS.length];
+        final int length = text.length();
+        int scanned = 0;
+        for (int i = 0; i < length && scanned < MAX_SCAN; scanned++) {
+            final int cp = Character.codePointAt(text, i);
+            i += Character.charCount(cp);
+            if (cp < 0x80) {
+                // ASCII without the script table lookup
+                if ((cp >= 'a' && cp <= 'z') || (cp >= 'A' && cp <= 'Z')) {
+                    letters++;
+                }
+                continue;
+            }
+            final UnicodeScript script = UnicodeScript.of(cp);
+            switch (script) {
+            case COMMON:
+            case INHERITED:
+            case UNKNOWN:
+                // 'ー' and '々' are common
+                continue;
+            case HIRAGANA:
+            case KATAKANA:
+                kana++;
+                break;
+            case HAN:
+                han++;
+                break;
+            case HANGUL:
+                hangul++;
+                break;
+            default:
+                counts[script.ordinal()]++;
+                break;
+            }
+            letters++;
+        }
+        if (letters == 0) {
+            return null;
+        }
+        // The Chinese text has no Kana
+        if (kana > 0 && (kana + han) >= letters * DOMINANT) {
+            return JAPANESE;
+        }
+        if (hangul > 0 && (hangul + han) >= letters * DOMINANT) {
+            return KOREAN;
+        }
+        if (han > 0 && han >= letters * DOMINANT) {
+            return HAN;
+        }
+        UnicodeScript dominant = null;
+        for (UnicodeScript script : SCRIPTS) {
+            if (counts[script.ordinal()] >= letters * DOMINANT) {
+                dominant = script;
+                break;
+            }
+        }
+        if (null == dominant) {
+            return null;
+        }
+        switch (dominant) {
+        case THAI:
+            return THAI;
+        case GREEK:
+            return GREEK;
+        case HEBREW:
+            return HEBREW;
+        case ARMENIAN:
+            return ARMENIAN;
+        case GEORGIAN:
+            return GEORGIAN;
+        case CYRILLIC:
+            return CYRILLIC;
+        case ARABIC:
+            return ARABIC;
+        case DEVANAGARI:
+            return DEVANAGARI;
+        default:
+            return null;
+        }
+    }
+
+    private static List<String> candidates(String... codes) {
+        return Collections.unmodifiableList(Arrays.asList(codes));
+    }
+}
@@ -1,37 +1,137 @@
 package net.tiny.nlp.open;
 
-import java.io.FileInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
 
 import opennlp.tools.sentdetect.SentenceDetector;
-import opennlp.tools.sentdetect.SentenceDetectorME;
 import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.util.Span;
 
+/**
+ * Sentence detection service of many languages.
+ *
+ * The '&lt;language&gt;-sent.bin' model of a language is loaded once on first use,
+ * from the classpath then from the file system, and shared by a {@link SentenceDetectorPool}.
+ * The Japanese and Chinese texts without model are split by the rule based
+ * {@link CjkSentenceDetector}.
+ *
+ */
 public class SentenceDetectorFactory {
-    private SentenceDetector detector;
+
+    private static final Logger LOGGER = Logger.getLogger(SentenceDetectorFactory.class.getName());
+
+    private final String path;
+    private final String language;
+    static final String[] CJK_LANGUAGES = {"ja", "zh"};
+
+    private final Map<String, SentenceDetector> detectors = new ConcurrentHashMap<>();
+    // The languages without model
+    private final Set<String> missing = ConcurrentHashMap.newKeySet();
 
     public SentenceDetectorFactory() throws IOException {
         this(new Properties());
     }
+
     public SentenceDetectorFactory(Properties param) throws IOException {
         this( OpenNLP.getModelPath(param), OpenNLP.getModelLanguage(param));
     }
 
     public SentenceDetectorFactory(String path, String language) throws IOException {
+        this.path = path;
+        this.language = language;
         loadSentenceDetector(path, language);
     }
 
-
     /**
-     * Obtain a reference to an english sentence detector to use in conjunction with
-     * the NameFinders
+     * Obtain a reference to the sentence detector of default language to use
+     * in conjunction with the NameFinders
      */
     public SentenceDetector getSentenceDetector() {
+        return detectors.get(language);
+    }
+
+    /**
+     * Obtain the thread safe sentence detector of a language.
+     *
+     * @param language
+     * @return The sentence detector or null when the language has no model
+     */
+    public SentenceDetector getSentenceDetector(String language) {
+        SentenceDetector detector = detectors.get(language);
+        if (null != detector || missing.contains(language)) {
+            return detector;
+        }
+        synchronized (detectors) {
+            detector = detectors.get(language);
+            if (null == detector && !missing.contains(language)) {
+                final SentenceModel model = loadSentenceModel(findSentenceModel(path, language));
+                if (null != model) {
+                    detector = new SentenceDetectorPool(model);
+                    detectors.put(language, detector);
+                } else if (isCjk(language)) {
+                    detector = CjkSentenceDetector.INSTANCE;
+                    detectors.put(language, detector);
+                } else {
+                    missing.add(language);
+                }
+            }
+        }
         return detector;
     }
 
+    public String[] getLanguages() {
+        final String[] languages = detectors.keySet().toArray(new String[detectors.size()]);
+        Arrays.sort(languages);
+        return languages;
+    }
+
+    /**
+     * Detect the sentence spans of many documents concurrently.
+     *
+     * @param language
+     * @param documents
+     * @return The sentence spans in the same order of the documents
+     */
+    public List<Span[]> sentPosDetect(String language, List<String> documents) {
+        return sentPosDetect(language, documents, ForkJoinPool.commonPool());
+    }
+
+    public List<Span[]> sentPosDetect(String language, List<String> documents, Executor executor) {
+        final SentenceDetector detector = getSentenceDetector(language);
+        if (null == detector) {
+            throw new IllegalArgumentException(String.format("Not found a OpenNLP '%s-sent' model.", language));
+        }
+        final String[] array = documents.toArray(new String[documents.size()]);
+        final Span[][] results = new Span[array.length][];
+        final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < array.length; from += OpenNLP.BATCH_SIZE) {
+            final int start = from;
+            final int end = Math.min(array.length, from + OpenNLP.BATCH_SIZE);
+            tasks.add(CompletableFuture.runAsync(() -> {
+                for (int i = start; i < end; i++) {
+                    results[i] = detector.sentPosDetect(array[i]);
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[tasks.size()])).join();
+        return Arrays.asList(results);
+    }
+
     /**
      * Load the sentence detector
      *
@@ -41,9 +141,60 @@ public class SentenceDetectorFactory {
      * @throws IOException
      */
     protected void loadSentenceDetector(String path, String language) throws IOException {
-        String modelFile = String.format("%s/%s--sent.bin", path, language);
-        InputStream modelStream = new FileInputStream(modelFile);
-        SentenceModel model = new SentenceModel(modelStream);
-        detector = new SentenceDetectorME(model);
+        final URL url = findSentenceModel(path, language);
+        if (null == url) {
+            if (isCjk(language)) {
+                detectors.put(language, CjkSentenceDetector.INSTANCE);
+                return;
+            }
+            throw new FileNotFoundException(getModelResource(path, language));
+        }
+        try (InputStream modelStream = url.openStream()) {
+            detectors.put(language, new SentenceDetectorPool(new SentenceModel(modelStream)));
+        }
+        missing.remove(language);
+    }
+
+    /**
+     * Find the model in the classpath, then in the file system.
+     *
+     * @param path
+     * @param language
+     * @return The model url or null
+     */
+    protected URL findSentenceModel(String path, String language) {
+        final String res = getModelResource(path, language);
+        final URL url = Thread.currentThread().getContextClassLoader().getResource(res);
+        if (null != url) {
+            return url;
+        }
+        final File file = new File(res);
+        if (file.isFile()) {
+            try {
+                return file.toURI().toURL();
+            } catch (MalformedURLException e) {}
+        }
+        return null;
+    }
+
+    static boolean isCjk(String language) {
+        return Arrays.asList(CJK_LANGUAGES).contains(language);
+    }
+
+    static String getModelResource(String path, String language) {
+        return String.format("%s/%s-sent.bin", path, language);
+    }
+
+    static SentenceModel loadSentenceModel(URL url) {
+        if (null == url)
+            return null;
+        try (InputStream in = url.openStream()) {
+            SentenceModel model = new SentenceModel(in);
+            LOGGER.info(String.format("An OpenNLP '%s' model was loaded.", url));
+            return model;
+        } catch (IOException e) {
+            LOGGER.warning(String.format("Load '%s' error : %s", url, e.getMessage()));
+            return null;
+        }
     }
 }
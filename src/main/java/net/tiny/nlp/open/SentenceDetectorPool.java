@@ -0,0 +1,50 @@
+package net.tiny.nlp.open;
+
+import opennlp.tools.sentdetect.SentenceDetector;
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.util.Span;
+
+/**
+ * Thread safe access to an OpenNLP sentence model.
+ *
+ * The {@link SentenceModel} is shared by all threads, every calling thread
+ * gets its own {@link SentenceDetectorME} which keeps the state of last detection.
+ *
+ */
+public class SentenceDetectorPool implements SentenceDetector {
+
+    private final SentenceModel model;
+    private final ThreadLocal<SentenceDetectorME> detectors;
+
+    public SentenceDetectorPool(SentenceModel model) {
+        if (null == model) {
+            throw new IllegalArgumentException("Null sentence model.");
+        }
+        this.model = model;
+        this.detectors = ThreadLocal.withInitial(() -> new SentenceDetectorME(this.model));
+    }
+
+    public SentenceModel getModel() {
+        return model;
+    }
+
+    /**
+     * Obtain the SentenceDetectorME bound to the current thread.
+     *
+     * @return The sentence detector of current thread, never shared with other threads.
+     */
+    public SentenceDetectorME get() {
+        return detectors.get();
+    }
+
+    @Override
+    public String[] sentDetect(String s) {
+        return detectors.get().sentDetect(s);
+    }
+
+    @Override
+    public Span[] sentPosDetect(String s) {
+        return detectors.get().sentPosDetect(s);
+    }
+}
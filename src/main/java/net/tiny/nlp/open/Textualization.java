@@ -1,16 +1,19 @@
 package net.tiny.nlp.open;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.logging.Level;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Paths;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 public class Textualization {
 
@@ -18,35 +21,93 @@ public class Textualization {
 
     public static final String BROWSER_USER_AGENT = "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:24.0) Gecko/20190101 Firefox/24.0";
     public static final String DEFAULT_USER_AGENT = "WikiClient/1.0";
+    // The directory of the cached pages, see FetchCache
+    public static final String FETCH_CACHE = "fetch.cache";
     private static final int BUFFER_SIZE = 8192*2; //16K
-    // 定义script的正则表达式{或<script[^>]*?>[\\s\\S]*?<\\/script>
-    private static final String REGEX_SCRIPT = "<[\\s]*?script[^>]*?>[\\s\\S]*?<[\\s]*?\\/[\\s]*?script[\\s]*?>";
-    // 定义style的正则表达式{或<style[^>]*?>[\\s\\S]*?<\\/style>
-    private static final String REGEX_STYLE = "<[\\s]*?style[^>]*?>[\\s\\S]*?<[\\s]*?\\/[\\s]*?style[\\s]*?>";
-    // 定义HTML标签的正则表达式
-    private static final String REGEX_HTML = "<[^>]+>"; //"</?[^>]+>"
-    // 定义连续空格行的正则表达式
-    private static final String REGEX_BLANKS = "[ ]+";
-    // 定义空格,回车,换行符,制表符的正则表达式
-    private static final String REGEX_LFS = "(?m)^\\s*$(\\n|\\r\\n)";
+    private static final Executor EXECUTOR = HttpFetcher.createExecutor(HttpFetcher.DEFAULT_THREADS);
+    private static volatile HttpFetcher fetcher = createFetcher(System.getProperty(FETCH_CACHE, ""));
+
+    /**
+     * Cache the fetched pages, a cached page is requested conditionally and
+     * a '304 Not Modified' response is served from the cache.
+     * The cache directory can also be set by the system property {@link #FETCH_CACHE}.
+     *
+     * @param cache The cache, or null not to cache
+     */
+    public static void setFetchCache(FetchCache cache) {
+        fetcher = new HttpFetcher(DEFAULT_USER_AGENT, HttpFetcher.DEFAULT_MAX_PER_HOST, EXECUTOR, cache);
+    }
+
+    public static FetchCache getFetchCache() {
+        return fetcher.getCache();
+    }
+
+    private static HttpFetcher createFetcher(String directory) {
+        FetchCache cache = null;
+        if (!directory.isEmpty()) {
+            try {
+                cache = new FetchCache(Paths.get(directory));
+            } catch (IOException e) {
+                LOGGER.warning(String.format("Open the fetch cache '%s' error : %s", directory, e.getMessage()));
+            }
+        }
+        return new HttpFetcher(DEFAULT_USER_AGENT, HttpFetcher.DEFAULT_MAX_PER_HOST, EXECUTOR, cache);
+    }
 
     /**
      * 从网页中提取纯文本
+     * 一次扫描过滤script,style和HTML标签,连续空格和空行
      * @param content
      * @return 纯文本
      */
     public static String text(String content) {
-        String text = content; // 含<HTML>标签的字符串
-        // 过滤script标签
-        text = Pattern.compile(REGEX_SCRIPT, Pattern.CASE_INSENSITIVE).matcher(text).replaceAll("");
-        // 过滤style标签
-        text = Pattern.compile(REGEX_STYLE, Pattern.CASE_INSENSITIVE).matcher(text).replaceAll("");
-        // 过滤HTML标签
-        text = Pattern.compile(REGEX_HTML, Pattern.CASE_INSENSITIVE).matcher(text).replaceAll("");
-        // 过滤连续空格行
-        text = text.replaceAll(REGEX_BLANKS, " ");
-        // 过滤连续换行，返回文本字符串
-        return text.replaceAll(REGEX_LFS, "");
+        return HtmlStripper.strip(content);
+    }
+
+    /**
+     * 从输入流中逐块解码并提取纯文本
+     * @param in
+     * @param charset
+     * @return 纯文本
+     * @throws IOException
+     */
+    public static String text(InputStream in, Charset charset) throws IOException {
+        final StringBuilder text = new StringBuilder();
+        text(new InputStreamReader(in, charset), text);
+        return text.toString();
+    }
+
+    public static void text(InputStream in, Charset charset, Appendable out) throws IOException {
+        text(new InputStreamReader(in, charset), out);
+    }
+
+    /**
+     * 从字符流中提取纯文本并逐块写出, 内存占用与网页大小无关
+     * @param in
+     * @param out 纯文本的输出
+     * @throws IOException
+     */
+    public static void text(Reader in, Appendable out) throws IOException {
+        final HtmlStripper stripper = new HtmlStripper(out);
+        final char[] buffer = new char[BUFFER_SIZE];
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            stripper.append(buffer, 0, len);
+        }
+        stripper.finish();
+    }
+
+    /**
+     * 从字符流中提取纯文本, 逐行交给后续处理(例如分句)
+     * 超过最大长度的行被分割
+     * @param in
+     * @param lines 纯文本行的处理
+     * @throws IOException
+     */
+    public static void text(Reader in, Consumer<String> lines) throws IOException {
+        final LineAppender appender = new LineAppender(lines);
+        text(in, appender);
+        appender.flush();
     }
 
     public static String text(URL url) {
@@ -55,8 +116,9 @@ public class Textualization {
 
     public static String text(URL url, String enc) {
         try {
-            return text(new String(fetch(url, DEFAULT_USER_AGENT), enc));
-        } catch (IOException e) {
+            final Charset charset = Charset.forName(enc);
+            return fetcher.fetch(url, DEFAULT_USER_AGENT, (in, length) -> text(in, charset));
+        } catch (IOException | IllegalCharsetNameException | UnsupportedCharsetException e) {
             //Warning
             LOGGER.warning(String.format("%s : '%s'", url.toString(), e.getMessage()));
             return null;
@@ -74,58 +136,56 @@ public class Textualization {
     }
 
     static byte[] fetch(URL url, String userAgent) throws IOException {
-        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty("Connection", "Close");
-        connection.setRequestProperty("User-Agent", userAgent);
-        connection.setInstanceFollowRedirects(true);
-        final int stat = connection.getResponseCode();
-        byte[] contents = null;
-        if (stat == HttpURLConnection.HTTP_OK) {
-            BufferedInputStream bis = new BufferedInputStream(connection.getInputStream());
-            if (isChunkedContent(connection)) {
-                contents = getChunkedContent(bis);
-            } else {
-                contents = getContent(bis, connection.getContentLength());
-            }
-            bis.close();
-            if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.fine(String.format("'%s' : [%d] - %d", url.toString(), stat, contents.length));
-            }
-        } else {
-            //Warning
-            LOGGER.warning(String.format("%s : %d", url.toString(), stat));
+        return fetcher.fetch(url, userAgent);
+    }
+
+    /**
+     * Split the plain text into lines for a line consumer.
+     */
+    static class LineAppender implements Appendable {
+        static final int MAX_LINE = 65536;
+        private final Consumer<String> lines;
+        private final StringBuilder line = new StringBuilder();
+
+        LineAppender(Consumer<String> lines) {
+            this.lines = lines;
         }
-        connection.disconnect();
-        if( null == contents) {
-            throw new IOException("HTTP error : " + stat);
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            return append(csq, 0, csq.length());
         }
-        return contents;
-    }
 
-    private static boolean isChunkedContent(HttpURLConnection connection) {
-        return "Chunked".equalsIgnoreCase(connection.getHeaderField("Transfer-Encoding"));
-    }
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            for (int i = start; i < end; i++) {
+                append(csq.charAt(i));
+            }
+            return this;
+        }
 
-    private static byte[] getChunkedContent(InputStream in) throws IOException {
-        ByteArrayOutputStream contentBuffer = new ByteArrayOutputStream();
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int len = 0;
-        while((len = in.read(buffer)) > 0 ) {
-            contentBuffer.write(buffer, 0, len);
+        @Override
+        public Appendable append(char c) {
+            if (c == '\n') {
+                int len = line.length();
+                if (len > 0 && line.charAt(len - 1) == '\r') {
+                    line.setLength(len - 1);
+                }
+                flush();
+            } else {
+                line.append(c);
+                if (line.length() >= MAX_LINE) {
+                    flush();
+                }
+            }
+            return this;
         }
-        return contentBuffer.toByteArray();
-    }
 
-    private static byte[] getContent(InputStream in, int contentLength) throws IOException {
-        ByteArrayOutputStream contentBuffer = new ByteArrayOutputStream();
-        byte readBuf[] = new byte[contentLength];
-        int readLen = 0;
-        while((readLen = in.read(readBuf)) > 0 ) {
-            contentBuffer.write(readBuf, 0, readLen);
-            contentBuffer.flush();
+        void flush() {
+            if (line.length() > 0) {
+                lines.accept(line.toString());
+                line.setLength(0);
+            }
         }
-        return contentBuffer.toByteArray();
     }
-
 }
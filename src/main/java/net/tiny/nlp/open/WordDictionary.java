@@ -0,0 +1,32 @@
+package net.tiny.nlp.open;
+
+/**
+ * Read only dictionary of words, looked up on the chars of a text
+ * without creating the strings.
+ *
+ * @see DoubleArrayTrie
+ * @see MappedDictionary
+ */
+public interface WordDictionary {
+
+    /**
+     * @return Number of words
+     */
+    int size();
+
+    boolean contains(CharSequence word);
+
+    /**
+     * Find the longest word starting at the position.
+     *
+     * @param text
+     * @param start
+     * @param end
+     * @return The char length of longest word, 0 when not found
+     */
+    int longestMatch(CharSequence text, int start, int end);
+
+    default int longestMatch(CharSequence text, int start) {
+        return longestMatch(text, start, text.length());
+    }
+}
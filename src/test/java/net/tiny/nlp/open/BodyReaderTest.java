@@ -0,0 +1,83 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class BodyReaderTest {
+
+    static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    // Returns a few bytes per read like a socket stream
+    static InputStream slow(byte[] data) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+    }
+
+    @Test
+    public void testKnownLength() throws Exception {
+        byte[] data = random(50000);
+        assertArrayEquals(data, BodyReader.read(slow(data), data.length, Integer.MAX_VALUE));
+        // Early truncation
+        assertArrayEquals(Arrays.copyOf(data, 1024), BodyReader.read(slow(data), data.length, 1024));
+        // Shorter than the declared length
+        assertArrayEquals(data, BodyReader.read(slow(data), data.length + 100, Integer.MAX_VALUE));
+        assertEquals(0, BodyReader.read(slow(data), 0, Integer.MAX_VALUE).length);
+    }
+
+    @Test
+    public void testUnknownLength() throws Exception {
+        for (int size : new int[] {0, 1, BodyReader.CHUNK_SIZE, BodyReader.CHUNK_SIZE + 1, 100000}) {
+            byte[] data = random(size);
+            assertArrayEquals(data, BodyReader.read(slow(data), -1, Integer.MAX_VALUE));
+        }
+        byte[] data = random(100000);
+        assertArrayEquals(Arrays.copyOf(data, 40000), BodyReader.read(slow(data), -1, 40000));
+        assertArrayEquals(Arrays.copyOf(data, BodyReader.CHUNK_SIZE), BodyReader.read(slow(data), -1, BodyReader.CHUNK_SIZE));
+    }
+
+    @Test
+    public void testPooledChunks() throws Exception {
+        // The chunks pooled by the other tests
+        BodyReader.drain();
+        byte[] chunk = BodyReader.acquire();
+        assertEquals(BodyReader.CHUNK_SIZE, chunk.length);
+        BodyReader.release(chunk);
+        // The released chunk is reused
+        byte[] reused = BodyReader.acquire();
+        assertSame(chunk, reused);
+        BodyReader.release(reused);
+        assertEquals(1, BodyReader.drain());
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        byte[] data = random(5000);
+        BodyReader.LimitedInputStream in = BodyReader.limit(slow(data), 3000);
+        assertArrayEquals(Arrays.copyOf(data, 3000), HttpFetcher.readBody(in, -1));
+        assertTrue(in.isTruncated());
+
+        in = BodyReader.limit(slow(data), 5000);
+        assertArrayEquals(data, HttpFetcher.readBody(in, -1));
+        assertFalse(in.isTruncated());
+    }
+}
@@ -0,0 +1,67 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import opennlp.tools.util.Span;
+
+public class CjkSentenceDetectorTest {
+
+    @Test
+    public void testSentDetect() throws Exception {
+        CjkSentenceDetector detector = CjkSentenceDetector.INSTANCE;
+        assertArrayEquals(new String[] {"今日は晴れです。", "明日は雨ですか？", "そうですね！！"},
+                detector.sentDetect("今日は晴れです。明日は雨ですか？　そうですね！！"));
+        // The terminators in quotes and brackets
+        assertArrayEquals(new String[] {"彼は「こんにちは。元気？」と言った。", "（注：これは例です。）続き。", "終わり"},
+                detector.sentDetect("彼は「こんにちは。元気？」と言った。（注：これは例です。）続き。終わり"));
+        // The closing quote after a terminator
+        assertArrayEquals(new String[] {"「行くぞ！」", "「はい。」"},
+                detector.sentDetect("「行くぞ！」「はい。」"));
+        // Line feeds and the unclosed bracket
+        assertArrayEquals(new String[] {"見出し", "「閉じない括弧。", "次の行。"},
+                detector.sentDetect("見出し\n\n「閉じない括弧。\n次の行。"));
+        assertArrayEquals(new String[] {"我们走吧！", "好的。"}, detector.sentDetect("我们走吧！好的。"));
+        // The full width period of decimals and abbreviations
+        assertArrayEquals(new String[] {"価格は１．５倍になった．", "次の文．"},
+                detector.sentDetect("価格は１．５倍になった．次の文．"));
+        assertArrayEquals(new String[] {"Ｕ．Ｓ．Ａの会社です。"}, detector.sentDetect("Ｕ．Ｓ．Ａの会社です。"));
+        // The half width terminators in a Latin word
+        assertArrayEquals(new String[] {"Yahoo!ニュースを見た。", "次の文。"},
+                detector.sentDetect("Yahoo!ニュースを見た。次の文。"));
+        assertArrayEquals(new String[] {"彼はWhy?と聞いた。"}, detector.sentDetect("彼はWhy?と聞いた。"));
+        assertArrayEquals(new String[] {"Really?", "はい!", "「No!」", "そう。"},
+                detector.sentDetect("Really? はい!「No!」 そう。"));
+        assertEquals(0, detector.sentDetect("").length);
+        assertEquals(0, detector.sentDetect(" \n　").length);
+    }
+
+    @Test
+    public void testSentPosDetect() throws Exception {
+        String text = " 1990年5月25日は晴れ。 田中真由美さんが来た。";
+        Span[] spans = CjkSentenceDetector.INSTANCE.sentPosDetect(text);
+        assertEquals(2, spans.length);
+        assertEquals(new Span(1, 15), spans[0]);
+        assertEquals("田中真由美さんが来た。", spans[1].getCoveredText(text).toString());
+    }
+
+    @Test
+    public void testSpeed() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1000000) {
+            sb.append("61歳の渡辺紳助さんは、「取締役会に参加します。」と話した。あなたは田中真由美の友達ではありませんか？\n");
+        }
+        String text = sb.toString();
+        long st = System.currentTimeMillis();
+        int count = 0;
+        for (int i = 0; i < 10; i++) {
+            count = CjkSentenceDetector.INSTANCE.sentPosDetect(text).length;
+        }
+        long time = (System.currentTimeMillis() - st) / 10;
+        System.out.println(String.format("Split %d chars into %d sentences in %dms", text.length(), count, time));
+        assertTrue(count > 10000);
+    }
+}
@@ -0,0 +1,70 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class DoubleArrayTrieTest {
+
+    @Test
+    public void testLongestMatch() throws Exception {
+        DoubleArrayTrie trie = DoubleArrayTrie.build(Arrays.asList("渡辺", "渡", "渡辺紳助", "田中", "アーサー", "a", "ab", "abc"));
+        assertEquals(8, trie.size());
+        assertEquals(4, trie.longestMatch("渡辺紳助さん", 0));
+        assertEquals(2, trie.longestMatch("渡辺真由子", 0));
+        assertEquals(1, trie.longestMatch("渡部", 0));
+        assertEquals(0, trie.longestMatch("部長", 0));
+        assertEquals(2, trie.longestMatch("の田中さん", 1));
+        assertEquals(2, trie.longestMatch("abcd", 0, 2));
+        assertEquals(0, trie.longestMatch("", 0));
+        assertTrue(trie.contains("アーサー"));
+        assertFalse(trie.contains("アーサ"));
+        assertFalse(trie.contains(""));
+    }
+
+    @Test
+    public void testRandomWords() throws Exception {
+        Random random = new Random(1L);
+        Set<String> words = new HashSet<>();
+        while (words.size() < 5000) {
+            char[] chars = new char[1 + random.nextInt(6)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) ('あ' + random.nextInt(20));
+            }
+            words.add(new String(chars));
+        }
+        DoubleArrayTrie trie = DoubleArrayTrie.build(words);
+        for (String word : words) {
+            assertTrue(trie.contains(word), word);
+        }
+        for (int n = 0; n < 5000; n++) {
+            char[] chars = new char[1 + random.nextInt(6)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) ('あ' + random.nextInt(22));
+            }
+            String text = new String(chars);
+            int expected = 0;
+            for (int i = 1; i <= text.length(); i++) {
+                if (words.contains(text.substring(0, i))) {
+                    expected = i;
+                }
+            }
+            assertEquals(expected, trie.longestMatch(text, 0), text);
+        }
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        DoubleArrayTrie trie = DoubleArrayTrie.load("train/ja-family-name.dic", "train/ja-first-name.dic", "train/jp-global-name.dic");
+        assertTrue(trie.size() > 3000);
+        assertTrue(trie.contains("渡辺"));
+        assertTrue(trie.contains("アーサー"));
+    }
+}
@@ -0,0 +1,112 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.Test;
+
+public class ExtractionPipelineTest {
+
+    static final String TEXT = "1990 年 5 月 25 日 は、 あなた は 田中 真由美 の 友達 ではありませんか？\n"
+            + "\n"
+            + "61歳 の 渡辺 紳助 さん は、11 月 29 日 に 非常 勤取締役 として 取締役会 に 参加 します。\n";
+
+    @Test
+    public void testToModelLanguage() throws Exception {
+        assertEquals("ja", ExtractionPipeline.toModelLanguage("jpn"));
+        assertEquals("en", ExtractionPipeline.toModelLanguage("eng"));
+        assertEquals("de", ExtractionPipeline.toModelLanguage("deu"));
+        assertEquals("zh", ExtractionPipeline.toModelLanguage("cmn"));
+        assertEquals("ja", ExtractionPipeline.toModelLanguage("ja"));
+        assertNull(ExtractionPipeline.toModelLanguage("xxx"));
+        assertNull(ExtractionPipeline.toModelLanguage(null));
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+        OpenNLP.appendModels("models/ja-ner-person.bin", "models/ja-ner-date.bin");
+        ExtractionPipeline pipeline = new ExtractionPipeline()
+                .setLanguageDetector(text -> "jpn");
+        Extraction extraction = pipeline.extract(TEXT);
+        assertEquals("田中 真由美", extraction.findFirst("Name"));
+        assertEquals("1990 年 5 月 25 日", extraction.findFirst("Date"));
+        assertTrue(extraction.find("Name").length >= 2);
+
+        // Only person names
+        extraction = pipeline.setTypes("person").extract(TEXT);
+        assertEquals(0, extraction.find("Date").length);
+        assertEquals("田中 真由美", extraction.findFirst("Name"));
+
+        // No model of the language
+        assertTrue(new ExtractionPipeline().setLanguageDetector(text -> "eng").extract("Hello world").isEmpty());
+    }
+
+    @Test
+    public void testExtractAll() throws Exception {
+        OpenNLP.appendModels("models/ja-ner-person.bin");
+        ExtractionPipeline pipeline = new ExtractionPipeline(3, 4)
+                .setLanguageDetector(text -> text.startsWith("Hello") ? "eng" : "jpn");
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            texts.add(i % 5 == 0 ? "Hello world" : TEXT);
+        }
+        texts.add("");
+        List<Extraction> extractions = pipeline.extractAll(texts);
+        assertEquals(texts.size(), extractions.size());
+        for (int i = 0; i < 100; i++) {
+            if (i % 5 == 0) {
+                assertTrue(extractions.get(i).isEmpty());
+            } else {
+                assertEquals("田中 真由美", extractions.get(i).findFirst("Name"));
+            }
+        }
+        assertTrue(extractions.get(100).isEmpty());
+    }
+
+    @Test
+    public void testFailedWorker() throws Exception {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            texts.add(i == 10 ? "bad" : "text " + i);
+        }
+        // A preparer fails
+        ExtractionPipeline preparing = new ExtractionPipeline(3, 1) {
+            @Override
+            Document prepare(String text) {
+                if ("bad".equals(text)) {
+                    throw new IllegalStateException(text);
+                }
+                return super.prepare(text);
+            }
+        }.setLanguageDetector(text -> "jpn");
+        // An extractor fails
+        ExtractionPipeline extracting = new ExtractionPipeline(3, 1) {
+            @Override
+            Extraction extract(Document document) {
+                if (document.index == 10) {
+                    throw new IllegalStateException("bad");
+                }
+                // Slower than the end marks are offered
+                try {
+                    Thread.sleep(1000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new Extraction();
+            }
+        }.setLanguageDetector(text -> "jpn");
+        for (ExtractionPipeline pipeline : new ExtractionPipeline[] {preparing, extracting}) {
+            CompletionException e = assertTimeoutPreemptively(Duration.ofSeconds(10L),
+                    () -> assertThrows(CompletionException.class, () -> pipeline.extractAll(texts)));
+            assertEquals("bad", e.getCause().getMessage());
+        }
+    }
+}
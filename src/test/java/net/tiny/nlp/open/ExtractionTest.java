@@ -0,0 +1,93 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+import opennlp.tools.util.Span;
+
+public class ExtractionTest {
+
+    @Test
+    public void testAppendSpan() throws Exception {
+        String[] sentence = "あなた は 田中 真由美 の 友達 、 田中 真由美 です".split("\\s+");
+        Extraction extraction = new Extraction();
+        extraction.append(new Span(2, 4, "Name", 0.6d), sentence);
+        extraction.append(new Span(7, 9, "Name", 0.8d), sentence);
+        extraction.append(new Span(5, 6, "Title", 0.5d), sentence);
+        assertEquals(2, extraction.size());
+        assertArrayEquals(new String[] {"Name", "Title"}, extraction.types());
+        assertArrayEquals(new String[] {"田中 真由美"}, extraction.find("Name"));
+        assertEquals("友達", extraction.findFirst("Title"));
+        assertNull(extraction.findFirst("Date"));
+        assertEquals(0, extraction.find("Date").length);
+
+        assertEquals(0, extraction.getSentence(0));
+        assertEquals(2, extraction.getStart(0));
+        assertEquals(4, extraction.getEnd(0));
+        assertEquals(6, extraction.getCharStart(0));
+        assertEquals(12, extraction.getCharEnd(0));
+        assertEquals("田中 真由美", String.join(" ", sentence).substring(6, 12));
+        assertEquals(0.8d, extraction.getProbability(0));
+        assertEquals(2, extraction.getCount(0));
+    }
+
+    @Test
+    public void testSentenceIndex() throws Exception {
+        String[] first = "あなた は 田中 真由美 の 友達".split("\\s+");
+        String[] second = "渡辺 紳助 と 田中 真由美 です".split("\\s+");
+        Extraction extraction = new Extraction();
+        extraction.append(new Span(2, 4, "Name", 0.6d), first, 0);
+        extraction.append(new Span(0, 2, "Name", 0.7d), second, 1);
+        extraction.append(new Span(3, 5, "Name", 0.8d), second, 1);
+        assertEquals(2, extraction.size());
+        // The offsets of the first occurrence are in its sentence
+        assertEquals("田中 真由美", extraction.getWord(0));
+        assertEquals(0, extraction.getSentence(0));
+        assertEquals(2, extraction.getStart(0));
+        assertEquals(2, extraction.getCount(0));
+        assertEquals(1, extraction.getSentence(1));
+        assertEquals(0, extraction.getStart(1));
+        assertEquals(-1, new Extraction().append("Name", "x").getSentence(0));
+
+        // The merged entities keep their sentences
+        Extraction merged = new Extraction().append("Date", "11 月 29 日").merge(extraction);
+        assertEquals(1, merged.getSentence(2));
+        assertEquals("渡辺 紳助", merged.getWord(2));
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        Extraction a = new Extraction().append("Name", "渡辺 紳助").append("Name", "渡辺 紳助");
+        Extraction b = new Extraction().append("Name", "渡辺 紳助").append("Date", "11 月 29 日");
+        a.merge(b);
+        assertEquals(2, a.size());
+        assertEquals(3, a.getCount(0));
+        assertEquals("11 月 29 日", a.findFirst("Date"));
+    }
+
+    @Test
+    public void testOutput() throws Exception {
+        String[] sentence = "He said \"Yes\"\tnow".split(" ");
+        Extraction extraction = new Extraction();
+        extraction.append(new Span(1, 3, "Quote", 0.12345d), sentence);
+        extraction.append("Other", "none");
+
+        StringBuilder json = new StringBuilder();
+        extraction.writeJson(json);
+        assertEquals("[{\"type\":\"Quote\",\"word\":\"said \\\"Yes\\\"\\tnow\",\"sentence\":0,\"start\":1,\"end\":3,"
+                + "\"charStart\":3,\"charEnd\":17,\"probability\":0.1235,\"count\":1},"
+                + "{\"type\":\"Other\",\"word\":\"none\",\"sentence\":-1,\"start\":-1,\"end\":-1,"
+                + "\"charStart\":-1,\"charEnd\":-1,\"probability\":null,\"count\":1}]", json.toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        extraction.output(new PrintStream(bytes, true, "UTF-8"));
+        assertEquals("Quote\tsaid \"Yes\"\\tnow\t1\t3\t3\t17\t0.1235\t1\t0\n"
+                + "Other\tnone\t-1\t-1\t-1\t-1\t\t1\t-1\n", bytes.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,119 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FetchCacheTest {
+
+    @Test
+    public void testPutAndGet(@TempDir Path dir) throws Exception {
+        FetchCache cache = new FetchCache(dir);
+        URL url = new URL("http://localhost/page.html");
+        assertNull(cache.get(url));
+        byte[] body = "<p>大谷 翔平</p>".getBytes(StandardCharsets.UTF_8);
+        // Not cacheable without a validator
+        assertFalse(cache.put(url, body, null, null));
+        assertNull(cache.get(url));
+
+        assertTrue(cache.put(url, body, "\"v1\"", "Sat, 01 Jun 2019 00:00:00 GMT"));
+        assertEquals(body.length, cache.size());
+        FetchCache.Entry entry = cache.get(url);
+        assertNotNull(entry);
+        assertEquals("\"v1\"", entry.getETag());
+        assertEquals("Sat, 01 Jun 2019 00:00:00 GMT", entry.getLastModified());
+        ByteBuffer buffer = entry.map();
+        assertEquals(body.length, buffer.remaining());
+        try (InputStream in = entry.openStream()) {
+            assertEquals("<p>大谷 翔平</p>", new String(HttpFetcher.readBody(in, -1), StandardCharsets.UTF_8));
+        }
+
+        // The size is restored from the directory
+        assertEquals(body.length, new FetchCache(dir).size());
+        cache.clear();
+        assertNull(cache.get(url));
+        assertEquals(0L, cache.size());
+    }
+
+    @Test
+    public void testEvict(@TempDir Path dir) throws Exception {
+        FetchCache cache = new FetchCache(dir, 25L, FetchCache.DEFAULT_MAX_AGE);
+        URL first = new URL("http://localhost/1");
+        URL second = new URL("http://localhost/2");
+        URL third = new URL("http://localhost/3");
+        byte[] body = "0123456789".getBytes(StandardCharsets.UTF_8);
+        cache.put(first, body, "a", null);
+        cache.put(second, body, "b", null);
+        long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(dir.resolve(FetchCache.key(first) + FetchCache.BODY), FileTime.fromMillis(now - 2000L));
+        Files.setLastModifiedTime(dir.resolve(FetchCache.key(second) + FetchCache.BODY), FileTime.fromMillis(now - 1000L));
+        // Least recently used entry is removed
+        cache.put(third, body, "c", null);
+        assertNull(cache.get(first));
+        assertNotNull(cache.get(second));
+        assertNotNull(cache.get(third));
+        assertEquals(20L, cache.size());
+
+        // Expired entries are removed
+        FetchCache expiring = new FetchCache(dir, FetchCache.DEFAULT_MAX_BYTES, 500L);
+        expiring.evict();
+        assertNull(expiring.get(second));
+        assertNotNull(expiring.get(third));
+        assertEquals(10L, expiring.size());
+    }
+
+    @Test
+    public void testConsistentEntry(@TempDir Path dir) throws Exception {
+        FetchCache cache = new FetchCache(dir);
+        URL url = new URL("http://localhost/page.html");
+        cache.put(url, "body-1".getBytes(StandardCharsets.US_ASCII), "v1", null);
+        FetchCache.Entry entry = cache.get(url);
+        // Replaced and removed during the request
+        cache.put(url, "body-22".getBytes(StandardCharsets.US_ASCII), "v2", null);
+        cache.clear();
+        assertEquals("v1", entry.getETag());
+        try (InputStream in = entry.openStream()) {
+            assertEquals("body-1", new String(HttpFetcher.readBody(in, -1), StandardCharsets.US_ASCII));
+        }
+
+        // The body and the validator of the same response
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final String version = "v" + i;
+            futures.add(executor.submit(() -> cache.put(url, ("body-" + version).getBytes(StandardCharsets.US_ASCII), version, null)));
+            futures.add(executor.submit(() -> {
+                FetchCache.Entry e = cache.get(url);
+                if (null == e) {
+                    return true;
+                }
+                try (InputStream in = e.openStream()) {
+                    return ("body-" + e.getETag()).equals(new String(HttpFetcher.readBody(in, -1), StandardCharsets.US_ASCII));
+                }
+            }));
+        }
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get());
+        }
+        executor.shutdown();
+        assertEquals(cache.get(url).map().remaining(), cache.size());
+    }
+}
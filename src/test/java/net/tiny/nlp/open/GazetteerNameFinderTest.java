@@ -0,0 +1,86 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import opennlp.tools.util.Span;
+
+public class GazetteerNameFinderTest {
+
+    @Test
+    public void testFind() throws Exception {
+        GazetteerNameFinder finder = new GazetteerNameFinder.Builder()
+                .add("city", Arrays.asList("New York", "York", "New  York City", "Paris"))
+                .add("person", "York")
+                .add("org", "he")
+                .build();
+        assertEquals(5, finder.size());
+        assertArrayEquals(new String[] {"city", "org"}, finder.getTypes());
+
+        String[] tokens = "I moved from Paris to New York City and then to York .".split(" ");
+        Span[] spans = finder.find(tokens);
+        assertEquals(3, spans.length);
+        assertEquals(new Span(3, 4, "city"), spans[0]);
+        // The longest entry
+        assertEquals(new Span(5, 8, "city"), spans[1]);
+        assertEquals(new Span(11, 12, "city"), spans[2]);
+        assertEquals(1d, spans[1].getProb());
+
+        // Only on the token boundaries
+        assertEquals(0, finder.find("the Yorkshire Parisian".split(" ")).length);
+        assertArrayEquals(new Span[] {new Span(1, 2, "org")}, finder.find("she he".split(" ")));
+        assertEquals(0, finder.find(new String[0]).length);
+    }
+
+    @Test
+    public void testFailureLinks() throws Exception {
+        GazetteerNameFinder finder = new GazetteerNameFinder.Builder()
+                .add("word", Arrays.asList("a b c d", "b c", "c d e"))
+                .build();
+        // 'a b c d' fails at 'x', the suffix 'b c' is found
+        assertArrayEquals(new Span[] {new Span(1, 3, "word")}, finder.find("a b c x".split(" ")));
+        assertArrayEquals(new Span[] {new Span(1, 4, "word")}, finder.find("a c d e".split(" ")));
+        assertArrayEquals(new Span[] {new Span(0, 4, "word")}, finder.find("a b c d e".split(" ")));
+    }
+
+    @Test
+    public void testDictionaries() throws Exception {
+        GazetteerNameFinder finder = new GazetteerNameFinder.Builder()
+                .load("Name", "train/ja-family-name.dic")
+                .add("Name", "真由美")
+                .mergeAdjacent(true)
+                .build();
+        assertTrue(finder.size() > 1000);
+        String[] tokens = "あなた は 田中 真由美 の 友達 の 渡辺 です".split(" ");
+        Span[] spans = finder.find(tokens);
+        assertEquals(2, spans.length);
+        // The family name and the first name are merged
+        assertEquals(new Span(2, 4, "Name"), spans[0]);
+        assertEquals(new Span(7, 8, "Name"), spans[1]);
+    }
+
+    @Test
+    public void testWithModels() throws Exception {
+        GazetteerNameFinder gazetteer = new GazetteerNameFinder.Builder()
+                .add("city", "Tokyo")
+                .build();
+        NameFinderFactory factory = new NameFinderFactory("models/ja-ner-person.bin")
+                .append("ja-ner-gazetteer", gazetteer);
+        assertArrayEquals(new String[] {"ja-ner-gazetteer", "ja-ner-person"}, factory.getModelNames("ja"));
+        assertEquals(gazetteer, factory.getNameFinder("ja", "gazetteer"));
+        assertEquals(null, factory.getNameFinderPool("ja-ner-gazetteer"));
+
+        OpenNLP.appendNameFinder("xx-ner-gazetteer", gazetteer);
+        try {
+            Extraction extraction = OpenNLP.extractAllTypes("xx", "I live in Tokyo".split(" "));
+            assertEquals("Tokyo", extraction.findFirst("city"));
+        } finally {
+            assertEquals(gazetteer, OpenNLP.removeNameFinder("xx-ner-gazetteer"));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpFetcherTest {
+
+    static final String PAGE = "<html><body><p>大谷 翔平 投手</p></body></html>";
+
+    private HttpServer server;
+    private String base;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/plain", ex -> {
+            clientPorts.add(ex.getRemoteAddress().getPort());
+            send(ex, 200, PAGE.getBytes(StandardCharsets.UTF_8), null);
+        });
+        server.createContext("/gzip", ex -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(PAGE.getBytes(StandardCharsets.UTF_8));
+            }
+            String accept = ex.getRequestHeaders().getFirst("Accept-Encoding");
+            assertTrue(accept.contains("gzip"));
+            send(ex, 200, bytes.toByteArray(), "gzip");
+        });
+        server.createContext("/slow", ex -> {
+            int n = running.incrementAndGet();
+            maxRunning.accumulateAndGet(n, Math::max);
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException e) {
+            }
+            running.decrementAndGet();
+            send(ex, 200, PAGE.getBytes(StandardCharsets.UTF_8), null);
+        });
+        server.createContext("/etag", ex -> {
+            if ("\"v1\"".equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                ex.sendResponseHeaders(304, -1);
+                ex.close();
+                return;
+            }
+            ex.getResponseHeaders().set("ETag", "\"v1\"");
+            send(ex, 200, PAGE.getBytes(StandardCharsets.UTF_8), null);
+        });
+        server.createContext("/large", ex -> {
+            // Chunked response without Content-Length
+            ex.sendResponseHeaders(200, 0);
+            try (OutputStream out = ex.getResponseBody()) {
+                for (int i = 0; i < 1000; i++) {
+                    out.write(PAGE.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        });
+        server.createContext("/missing", ex -> send(ex, 404, "Not Found".getBytes(StandardCharsets.UTF_8), null));
+        server.start();
+        base = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    static void send(HttpExchange ex, int stat, byte[] body, String encoding) throws IOException {
+        if (null != encoding) {
+            ex.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        ex.sendResponseHeaders(stat, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void testKeepAlive() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher();
+        for (int i = 0; i < 10; i++) {
+            byte[] body = fetcher.fetch(new URL(base + "/plain"));
+            assertEquals(PAGE, new String(body, StandardCharsets.UTF_8));
+        }
+        // All requests of one thread reuse one connection
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher();
+        byte[] body = fetcher.fetch(new URL(base + "/gzip"));
+        assertEquals(PAGE, new String(body, StandardCharsets.UTF_8));
+        assertEquals("大谷 翔平 投手", Textualization.text(new URL(base + "/gzip")));
+    }
+
+    @Test
+    public void testHttpError() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher();
+        assertThrows(IOException.class, () -> fetcher.fetch(new URL(base + "/missing")));
+    }
+
+    @Test
+    public void testMaxPerHost() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher(Textualization.DEFAULT_USER_AGENT, 2, Executors.newFixedThreadPool(8));
+        List<URL> urls = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            urls.add(new URL(base + "/slow?p=" + i));
+        }
+        List<CompletableFuture<byte[]>> futures = fetcher.fetchAll(urls);
+        for (CompletableFuture<byte[]> future : futures) {
+            assertEquals(PAGE, new String(future.get(), StandardCharsets.UTF_8));
+        }
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testNoHeadOfLineBlocking() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher(Textualization.DEFAULT_USER_AGENT, 1, Executors.newFixedThreadPool(2));
+        List<URL> urls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            urls.add(new URL(base + "/slow?p=" + i));
+        }
+        List<CompletableFuture<byte[]>> futures = fetcher.fetchAll(urls);
+        // Another host is served by the free thread while the slow host is queued
+        URL other = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/plain");
+        assertEquals(PAGE, new String(fetcher.fetchAsync(other).get(), StandardCharsets.UTF_8));
+        assertTrue(futures.stream().filter(CompletableFuture::isDone).count() < 5);
+        for (CompletableFuture<byte[]> future : futures) {
+            assertEquals(PAGE, new String(future.get(), StandardCharsets.UTF_8));
+        }
+        assertEquals(1, maxRunning.get());
+        // The idle hosts are removed
+        assertEquals(0, fetcher.getActiveHosts());
+    }
+
+    @Test
+    public void testConditionalRequest(@TempDir Path dir) throws Exception {
+        FetchCache cache = new FetchCache(dir);
+        HttpFetcher fetcher = new HttpFetcher(Textualization.DEFAULT_USER_AGENT, 2, Executors.newFixedThreadPool(2), cache);
+        URL url = new URL(base + "/etag");
+        assertEquals(PAGE, new String(fetcher.fetch(url), StandardCharsets.UTF_8));
+        assertEquals(0, notModified.get());
+        assertEquals("\"v1\"", cache.get(url).getETag());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(PAGE, new String(fetcher.fetch(url), StandardCharsets.UTF_8));
+        }
+        assertEquals(3, notModified.get());
+        // Without validator the page is not cached
+        fetcher.fetch(new URL(base + "/plain"));
+        assertNull(cache.get(new URL(base + "/plain")));
+    }
+
+    @Test
+    public void testMaxBodySize() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher();
+        int size = PAGE.getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(size * 1000, fetcher.fetch(new URL(base + "/large")).length);
+        fetcher.setMaxBodySize(size * 10);
+        assertEquals(size * 10, fetcher.fetch(new URL(base + "/large")).length);
+        // Declared length over the max size
+        fetcher.setMaxBodySize(10);
+        assertEquals(10, fetcher.fetch(new URL(base + "/plain")).length);
+    }
+}
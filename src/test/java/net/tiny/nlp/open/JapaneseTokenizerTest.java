@@ -0,0 +1,66 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import opennlp.tools.util.Span;
+
+public class JapaneseTokenizerTest {
+
+    static JapaneseTokenizer tokenizer;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        tokenizer = JapaneseTokenizer.load("train/ja-family-name.dic", "train/ja-first-name.dic", "train/jp-global-name.dic");
+    }
+
+    @Test
+    public void testTokenize() throws Exception {
+        assertArrayEquals("61 歳 の 渡辺 紳助 さん は 、 11 月 29 日 に 非常勤取締役 として 取締役会 に 参加 します 。".split(" "),
+                tokenizer.tokenize("61歳の渡辺紳助さんは、11月29日に非常勤取締役として取締役会に参加します。"));
+        assertArrayEquals("アーサー ・ コナン ・ ドイル は イギリス の 作家 です 。".split(" "),
+                tokenizer.tokenize("アーサー・コナン・ドイルはイギリスの作家です。"));
+        // Pre-spaced text
+        assertArrayEquals("あなた は 田中 真由美 の 友達".split(" "),
+                tokenizer.tokenize("あなた は 田中 真由美 の 友達"));
+        assertEquals(0, tokenizer.tokenize(" 　").length);
+
+        Span[] spans = tokenizer.tokenizePos("渡辺紳助さん");
+        assertEquals(new Span(0, 2), spans[0]);
+        assertEquals(new Span(2, 4), spans[1]);
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+        OpenNLP.appendModels("models/ja-ner-person.bin");
+        String text = "55歳で、元の会長である渡邊真由が指名されました。";
+        String[] tokens = tokenizer.tokenize(text);
+        assertEquals("渡邊 真由", OpenNLP.extract("ja", "person", tokens).findFirst("Name"));
+
+        ExtractionPipeline pipeline = new ExtractionPipeline()
+                .setLanguageDetector(t -> "jpn")
+                .setTokenizers(language -> tokenizer);
+        assertEquals("渡邊 真由", pipeline.extract(text).findFirst("Name"));
+    }
+
+    @Test
+    public void testSpeed() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1000000) {
+            sb.append("61歳の渡辺紳助さんは、11月29日に非常勤取締役として取締役会に参加します。");
+        }
+        String text = sb.toString();
+        int count = 0;
+        long st = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            count = tokenizer.tokenizePos(text).length;
+        }
+        long time = Math.max(1L, (System.currentTimeMillis() - st) / 5);
+        System.out.println(String.format("Tokenized %d chars into %d tokens in %dms", text.length(), count, time));
+        assertTrue(count > 100000);
+    }
+}
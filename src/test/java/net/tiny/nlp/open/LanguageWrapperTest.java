@@ -1,9 +1,32 @@
 package net.tiny.nlp.open;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 
+import opennlp.tools.langdetect.Language;
+import opennlp.tools.langdetect.LanguageDetectorFactory;
+import opennlp.tools.langdetect.LanguageDetectorME;
+import opennlp.tools.langdetect.LanguageDetectorModel;
+import opennlp.tools.langdetect.LanguageSample;
+import opennlp.tools.util.CollectionObjectStream;
+import opennlp.tools.util.TrainingParameters;
+
 public class LanguageWrapperTest {
 
 
@@ -31,4 +54,218 @@ public class LanguageWrapperTest {
         assertEquals("German", wrapper.guest("Alle Jahre wieder: Millionen Spanier haben am Dienstag die Auslosung in der größten Lotterie der Welt verfolgt"));
     }
 
+
+    static LanguageDetectorModel trainModel() throws Exception {
+        String[][] corpus = {
+            {"eng", "The quick brown fox jumps over the lazy dog and runs away"},
+            {"eng", "This is a small English sentence for the language model"},
+            {"spa", "El rápido zorro marrón salta sobre el perro perezoso"},
+            {"spa", "Esta es una pequeña frase en español para el modelo"},
+            {"deu", "Der schnelle braune Fuchs springt über den faulen Hund"},
+            {"deu", "Dies ist ein kleiner deutscher Satz für das Modell"},
+        };
+        List<LanguageSample> samples = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            for (String[] sample : corpus) {
+                samples.add(new LanguageSample(new Language(sample[0]), sample[1]));
+            }
+        }
+        TrainingParameters params = TrainingParameters.defaultParams();
+        params.put(TrainingParameters.CUTOFF_PARAM, 0);
+        params.put(TrainingParameters.ITERATIONS_PARAM, 20);
+        return LanguageDetectorME.train(new CollectionObjectStream<>(samples), params, new LanguageDetectorFactory());
+    }
+
+    @Test
+    public void testCacheAndTopK() throws Exception {
+        LanguageDetectorModel model = trainModel();
+        TreeMap<String, String> codes = new TreeMap<>();
+        codes.put("eng", "English");
+        codes.put("spa", "Spanish");
+        codes.put("deu", "German");
+        LanguageWrapper wrapper = new LanguageWrapper(codes, model, 2);
+        LanguageDetectorME detector = new LanguageDetectorME(model);
+
+        String[] texts = {"the lazy dog", "el perro perezoso", "der faule Hund"};
+        for (String text : texts) {
+            Language[] expected = detector.predictLanguages(text);
+            Language[] all = wrapper.predictLanguages(text);
+            assertEquals(expected.length, all.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i].getLang(), all[i].getLang());
+                assertEquals(expected[i].getConfidence(), all[i].getConfidence(), 1e-9);
+            }
+            Language[] top = wrapper.predictLanguages(text, 2);
+            assertEquals(2, top.length);
+            assertEquals(expected[0].getLang(), top[0].getLang());
+            assertEquals(expected[1].getLang(), top[1].getLang());
+            assertEquals(expected[0].getLang(), wrapper.guestLanguage(text).getLang());
+        }
+        assertEquals("English", wrapper.guest("  the   lazy dog "));
+        assertEquals("German", wrapper.guest("der faule Hund"));
+        // LRU cache of 2 entries
+        assertEquals(2, wrapper.getCacheSize());
+        assertTrue(wrapper.getCacheHits() > wrapper.getCacheMisses());
+        assertTrue(wrapper.getCacheHitRate() > 0.5d);
+        wrapper.clearCache();
+        assertEquals(0, wrapper.getCacheSize());
+        assertEquals(0d, wrapper.getCacheHitRate());
+    }
+
+    @Test
+    public void testScriptFastPath() throws Exception {
+        TreeMap<String, String> codes = new TreeMap<>();
+        codes.put("eng", "English");
+        codes.put("jpn", "Japanese");
+        LanguageWrapper wrapper = new LanguageWrapper(codes, trainModel(), 16);
+        // Not a language of the model, decided by the script
+        assertEquals("Japanese", wrapper.guest("お名前"));
+        assertEquals(1d, wrapper.guestLanguage("お名前").getConfidence());
+        assertEquals(0L, wrapper.getCacheMisses());
+        // Latin text is detected by the model
+        assertEquals("eng", wrapper.guestLanguage("the lazy dog").getLang());
+        assertEquals(1L, wrapper.getCacheMisses());
+    }
+
+    @Test
+    public void testGuestLanguages() throws Exception {
+        TreeMap<String, String> codes = new TreeMap<>();
+        codes.put("eng", "English");
+        codes.put("spa", "Spanish");
+        codes.put("deu", "German");
+        LanguageWrapper wrapper = new LanguageWrapper(codes, trainModel(), 0);
+        String[] sources = {"the lazy dog", "el perro perezoso", "der faule Hund", ""};
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            texts.add(sources[i % sources.length] + (i % 7 == 0 ? " " + i : ""));
+        }
+        StringBuilder longText = new StringBuilder();
+        while (longText.length() < LanguageWrapper.MAX_SAMPLE_LENGTH * 4) {
+            longText.append("Der schnelle braune Fuchs springt über den faulen Hund ");
+        }
+        texts.add(longText.toString());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Language> langs = wrapper.guestLanguages(texts, executor);
+            assertEquals(texts.size(), langs.size());
+            for (int i = 0; i < texts.size() - 1; i++) {
+                Language expected = wrapper.guestLanguage(texts.get(i));
+                if (null == expected) {
+                    assertNull(langs.get(i));
+                } else {
+                    assertEquals(expected.getLang(), langs.get(i).getLang());
+                }
+            }
+            assertEquals("deu", langs.get(texts.size() - 1).getLang());
+            // Stream of texts
+            assertEquals(Arrays.asList("eng", "spa"), wrapper.guestLanguages(Arrays.asList(sources).subList(0, 2).stream()::iterator, executor)
+                    .stream().map(Language::getLang).collect(Collectors.toList()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStreamGuestLanguages() throws Exception {
+        TreeMap<String, String> codes = new TreeMap<>();
+        codes.put("eng", "English");
+        codes.put("spa", "Spanish");
+        LanguageWrapper wrapper = new LanguageWrapper(codes, trainModel(), 16);
+        String[] sources = {"the lazy dog", "el perro perezoso"};
+        AtomicInteger pulled = new AtomicInteger();
+        int total = OpenNLP.BATCH_SIZE * LanguageWrapper.MAX_BATCHES * 3;
+        // A lazy stream of texts
+        Stream<String> stream = Stream.iterate(0, i -> i + 1).limit(total)
+                .peek(i -> pulled.incrementAndGet())
+                .map(i -> sources[i % 2]);
+        Iterable<String> texts = stream::iterator;
+        List<Integer> sizes = new ArrayList<>();
+        List<Integer> pulledAtFirst = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            wrapper.guestLanguages(texts, executor, langs -> {
+                if (sizes.isEmpty()) {
+                    pulledAtFirst.add(pulled.get());
+                }
+                sizes.add(langs.size());
+                for (int i = 0; i < langs.size(); i++) {
+                    assertEquals(i % 2 == 0 ? "eng" : "spa", langs.get(i).getLang());
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(total / OpenNLP.BATCH_SIZE, sizes.size());
+        // The first results came before all texts were read
+        assertTrue(pulledAtFirst.get(0) <= OpenNLP.BATCH_SIZE * LanguageWrapper.MAX_BATCHES + 1);
+    }
+
+    @Test
+    public void testSample() throws Exception {
+        assertEquals("short", LanguageWrapper.sample("short"));
+        StringBuilder text = new StringBuilder();
+        while (text.length() < LanguageWrapper.MAX_SAMPLE_LENGTH * 2) {
+            text.append("word ");
+        }
+        String sample = LanguageWrapper.sample(text.toString());
+        assertTrue(sample.length() <= LanguageWrapper.MAX_SAMPLE_LENGTH);
+        assertTrue(sample.endsWith("word"));
+    }
+
+    @Test
+    public void testNormalizedScores() throws Exception {
+        String text = "the lazy dog";
+        assertSame(text, LanguageWrapper.normalize(text));
+        assertEquals(text, LanguageWrapper.normalize("  the \t lazy\ndog "));
+
+        TreeMap<String, String> codes = new TreeMap<>();
+        codes.put("eng", "English");
+        codes.put("spa", "Spanish");
+        codes.put("deu", "German");
+        LanguageWrapper wrapper = new LanguageWrapper(codes, trainModel(), 16);
+        StringBuilder padded = new StringBuilder(text);
+        while (padded.length() <= LanguageWrapper.MAX_CACHED_LENGTH) {
+            padded.append(' ');
+        }
+        // Too long to cache, scored on the same normalized text
+        assertArrayEquals(wrapper.scores(text), wrapper.scores(padded.toString()), 0d);
+        assertEquals(1L, wrapper.getCacheMisses());
+        assertEquals(1, wrapper.getCacheSize());
+    }
+
+    @Test
+    public void testStripedCache() throws Exception {
+        assertEquals(1, new LanguageWrapper.ScoreCache(2).stripes());
+        assertEquals(1, new LanguageWrapper.ScoreCache(100).stripes());
+        assertEquals(LanguageWrapper.ScoreCache.MAX_STRIPES, new LanguageWrapper.ScoreCache(10000).stripes());
+
+        TreeMap<String, String> codes = new TreeMap<>();
+        codes.put("eng", "English");
+        codes.put("spa", "Spanish");
+        LanguageWrapper wrapper = new LanguageWrapper(codes, trainModel(), 1024);
+        String[] sources = {"the lazy dog", "el perro perezoso"};
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        String text = sources[i % 2] + " " + (i % 1500);
+                        assertEquals(i % 2 == 0 ? "eng" : "spa", wrapper.guestLanguage(text).getLang());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // Each stripe is bounded
+        assertTrue(wrapper.getCacheSize() <= 1024);
+        assertTrue(wrapper.getCacheHits() > 0L);
+        wrapper.clearCache();
+        assertEquals(0, wrapper.getCacheSize());
+    }
 }
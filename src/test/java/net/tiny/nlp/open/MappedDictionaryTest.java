@@ -0,0 +1,83 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedDictionaryTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void testCompileAndLookup() throws Exception {
+        Path dic = folder.resolve("test.dic");
+        Files.write(dic, Arrays.asList("# comment", "渡辺", "渡", "ab", "", "abc", "ab", "é", "𠮷野家", "Zoo"), StandardCharsets.UTF_8);
+        Path bin = folder.resolve("test.bin");
+        assertEquals(7, MappedDictionary.compile(bin, Collections.singletonList(dic.toUri().toURL())));
+
+        MappedDictionary dictionary = MappedDictionary.open(bin);
+        assertEquals(7, dictionary.size());
+        // Sorted by UTF-8 bytes
+        assertEquals("Zoo", dictionary.word(0));
+        assertEquals("ab", dictionary.word(1));
+        assertEquals("𠮷野家", dictionary.word(6));
+
+        assertTrue(dictionary.contains("渡辺"));
+        assertTrue(dictionary.contains("é"));
+        assertTrue(dictionary.contains("𠮷野家"));
+        assertFalse(dictionary.contains("a"));
+        assertFalse(dictionary.contains("abcd"));
+        assertFalse(dictionary.contains(""));
+
+        assertEquals(3, dictionary.longestMatch("abcd", 0));
+        assertEquals(2, dictionary.longestMatch("xabx", 1));
+        assertEquals(2, dictionary.longestMatch("abc", 0, 2));
+        assertEquals(2, dictionary.longestMatch("渡辺さん", 0));
+        assertEquals(1, dictionary.longestMatch("渡部さん", 0));
+        assertEquals(4, dictionary.longestMatch("𠮷野家の牛丼", 0));
+        assertEquals(0, dictionary.longestMatch("\ud842", 0));
+    }
+
+    @Test
+    public void testSameAsTrie() throws Exception {
+        URL[] urls = {
+            Thread.currentThread().getContextClassLoader().getResource("train/ja-family-name.dic"),
+            Thread.currentThread().getContextClassLoader().getResource("train/ja-first-name.dic"),
+            Thread.currentThread().getContextClassLoader().getResource("train/jp-global-name.dic")
+        };
+        Path bin = folder.resolve("names.bin");
+        MappedDictionary.compile(bin, Arrays.asList(urls));
+        MappedDictionary dictionary = MappedDictionary.open(bin);
+        DoubleArrayTrie trie = DoubleArrayTrie.load(Arrays.asList(urls));
+        assertEquals(trie.size(), dictionary.size());
+
+        String text = "61歳の渡辺紳助さんは、11月29日に非常勤取締役として取締役会に参加します。アーサー・コナン・ドイルはイギリスの作家です。";
+        for (int i = 0; i < text.length(); i++) {
+            assertEquals(trie.longestMatch(text, i), dictionary.longestMatch(text, i), text.substring(i));
+        }
+
+        JapaneseTokenizer tokenizer = new JapaneseTokenizer(dictionary);
+        assertArrayEquals(new JapaneseTokenizer(trie).tokenize(text), tokenizer.tokenize(text));
+    }
+
+    @Test
+    public void testBrokenFile() throws Exception {
+        Path bin = folder.resolve("broken.bin");
+        Files.write(bin, "not a dictionary".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> MappedDictionary.open(bin));
+    }
+}
@@ -0,0 +1,132 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import opennlp.tools.langdetect.Language;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.util.Span;
+
+public class ModelBundleTest {
+
+    static URL person = Thread.currentThread().getContextClassLoader().getResource("models/ja-ner-person.bin");
+    static URL date = Thread.currentThread().getContextClassLoader().getResource("models/ja-ner-date.bin");
+
+    static String[][] sentences = {
+        "1990 年 5 月 25 日 は、 あなた は 田中 真由美 の 友達 ではありませんか？".split(" "),
+        "田中 さん は 2019 年 11 月 18 日 に 東京 へ 行き ました 。".split(" "),
+    };
+
+    @Test
+    public void testNameFinderModels(@TempDir Path dir) throws Exception {
+        Map<String, TokenNameFinder> finders = new HashMap<>();
+        finders.put("ja-ner-person", new NameFinderPool(new TokenNameFinderModel(person)));
+        finders.put("ja-ner-date", new NameFinderPool(new TokenNameFinderModel(date)));
+        finders.put("ja-ner-gazetteer", new GazetteerNameFinder.Builder().add("city", "東京").build());
+        NameFinderFactory factory = new NameFinderFactory(finders, null);
+
+        Path file = dir.resolve("models.bundle");
+        // The gazetteer has no model
+        assertEquals(2, ModelBundle.write(file, factory));
+        assertTrue(Files.size(file) > 0L);
+
+        ModelBundle bundle = ModelBundle.open(file);
+        assertEquals(2, bundle.getModelNames().length);
+        assertFalse(bundle.hasLanguageDetector());
+        assertNull(bundle.getNameFinderModel("ja-ner-gazetteer"));
+        assertNull(bundle.createLanguageWrapper(16));
+
+        for (String modelName : new String[] {"ja-ner-person", "ja-ner-date"}) {
+            TokenNameFinderModel original = ((NameFinderPool) factory.getNameFinder(modelName)).getModel();
+            TokenNameFinderModel loaded = bundle.getNameFinderModel(modelName);
+            assertEquals(original.getLanguage(), loaded.getLanguage());
+            assertEquals(original.getSequenceCodec().getClass(), loaded.getSequenceCodec().getClass());
+            NameFinderME expected = new NameFinderME(original);
+            NameFinderME actual = new NameFinderME(loaded);
+            for (String[] sentence : sentences) {
+                Span[] spans = expected.find(sentence);
+                assertArrayEquals(spans, actual.find(sentence));
+                assertArrayEquals(expected.probs(spans), actual.probs(spans), 1e-9);
+                expected.clearAdaptiveData();
+                actual.clearAdaptiveData();
+            }
+        }
+
+        NameFinderFactory loaded = bundle.createNameFinderFactory();
+        assertEquals(2, loaded.getAllModelNames().length);
+        Span[] spans = loaded.getNameFinder("ja", "date").find(sentences[0]);
+        assertEquals(1, spans.length);
+        assertEquals("1990 年 5 月 25 日", String.join(" ", Span.spansToStrings(spans, sentences[0])));
+    }
+
+    @Test
+    public void testLazyModels(@TempDir Path dir) throws Exception {
+        Map<String, TokenNameFinder> finders = new HashMap<>();
+        finders.put("ja-ner-person", new NameFinderPool(new TokenNameFinderModel(person)));
+        finders.put("ja-ner-date", new NameFinderPool(new TokenNameFinderModel(date)));
+        Path file = dir.resolve("models.bundle");
+        assertEquals(2, ModelBundle.write(file, new NameFinderFactory(finders, null)));
+
+        ModelCache cache = new ModelCache();
+        assertEquals(2, ModelBundle.open(file).register(cache).length);
+        assertEquals(0, cache.getLoadedModels().length);
+        NameFinderFactory factory = new NameFinderFactory(cache);
+        assertArrayEquals(new String[] {"ja-ner-date", "ja-ner-person"}, factory.getModelNames("ja"));
+        Span[] spans = factory.getNameFinder("ja", "date").find(sentences[0]);
+        assertEquals("1990 年 5 月 25 日", String.join(" ", Span.spansToStrings(spans, sentences[0])));
+        // Only the used model is built
+        assertArrayEquals(new String[] {"ja-ner-date"}, cache.getLoadedModels());
+    }
+
+    @Test
+    public void testLanguageDetector(@TempDir Path dir) throws Exception {
+        TreeMap<String, String> codes = new TreeMap<>();
+        codes.put("eng", "English");
+        codes.put("spa", "Spanish");
+        codes.put("deu", "German");
+        LanguageWrapper wrapper = new LanguageWrapper(codes, LanguageWrapperTest.trainModel(), 16);
+
+        Path file = dir.resolve("models.bundle");
+        assertEquals(1, ModelBundle.write(file, new NameFinderFactory(new HashMap<>(), null), wrapper));
+        ModelBundle bundle = ModelBundle.open(file);
+        assertEquals(0, bundle.getModelNames().length);
+        assertTrue(bundle.hasLanguageDetector());
+
+        LanguageWrapper loaded = bundle.createLanguageWrapper(16);
+        assertArrayEquals(wrapper.getCodes(), loaded.getCodes());
+        assertEquals("German", loaded.getLanguage("deu"));
+        for (String text : new String[] {"the lazy dog", "el perro perezoso", "der faule Hund"}) {
+            Language[] expected = wrapper.predictLanguages(text);
+            Language[] actual = loaded.predictLanguages(text);
+            assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i].getLang(), actual[i].getLang());
+                assertEquals(expected[i].getConfidence(), actual[i].getConfidence(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testBrokenFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("broken.bundle");
+        Files.write(file, new byte[] {'P', 'K', 3, 4, 0, 0, 0, 0, 0, 0, 0, 0});
+        assertThrows(IOException.class, () -> ModelBundle.open(file));
+    }
+}
@@ -0,0 +1,165 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import opennlp.tools.namefind.TokenNameFinderModel;
+
+public class ModelCacheTest {
+
+    static URL person = Thread.currentThread().getContextClassLoader().getResource("models/ja-ner-person.bin");
+    static URL date = Thread.currentThread().getContextClassLoader().getResource("models/ja-ner-date.bin");
+
+    @Test
+    public void testLazyLoad() throws Exception {
+        ModelCache cache = new ModelCache().register(person).register(date);
+        assertEquals(2, cache.getModelNames().length);
+        assertEquals(0, cache.getLoadedModels().length);
+        assertNull(cache.get("ja-ner-unknown"));
+
+        // Loaded once by many threads
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Future<?>[] futures = new Future<?>[8];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = executor.submit(() -> cache.get("ja", "person"));
+        }
+        NameFinderPool pool = cache.get("ja-ner-person");
+        for (Future<?> future : futures) {
+            assertSame(pool, future.get());
+        }
+        executor.shutdown();
+        assertEquals(1L, cache.getLoads());
+        assertEquals(8L, cache.getHits());
+        assertArrayEquals(new String[] {"ja-ner-person"}, cache.getLoadedModels());
+        assertTrue(cache.getUsedBytes() > ModelCache.MODEL_OVERHEAD);
+        assertTrue(cache.getAverageLoadMillis() > 0d);
+        // The default model of the language
+        assertNull(cache.get("ja", "name"));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        long personSize = ModelCache.estimateSize(new TokenNameFinderModel(person), person);
+        long dateSize = ModelCache.estimateSize(new TokenNameFinderModel(date), date);
+        // Only one model fits
+        ModelCache cache = new ModelCache(Math.max(personSize, dateSize) + 1024L).register(person).register(date);
+        NameFinderPool first = cache.get("ja-ner-person");
+        assertNotNull(cache.get("ja-ner-date"));
+        assertArrayEquals(new String[] {"ja-ner-date"}, cache.getLoadedModels());
+        assertEquals(dateSize, cache.getUsedBytes());
+
+        // Loaded again, the evicted model is still usable
+        assertTrue(first.find("1990 年 5 月 25 日".split(" ")).length >= 0);
+        NameFinderPool second = cache.get("ja-ner-person");
+        assertTrue(first != second);
+        assertEquals(3L, cache.getLoads());
+        assertEquals(2L, cache.getEvictions());
+        System.out.println(cache);
+    }
+
+    @Test
+    public void testFrequentModelKept() throws Exception {
+        long personSize = ModelCache.estimateSize(new TokenNameFinderModel(person), person);
+        long dateSize = ModelCache.estimateSize(new TokenNameFinderModel(date), date);
+        URL custom = Thread.currentThread().getContextClassLoader().getResource("models/en-ner-custom.bin");
+        long customSize = ModelCache.estimateSize(new TokenNameFinderModel(custom), custom);
+        ModelCache cache = new ModelCache(personSize + Math.max(dateSize, customSize) + 1024L)
+                .register(person).register(date).register(custom);
+        for (int i = 0; i < 10; i++) {
+            cache.get("ja-ner-person");
+        }
+        cache.get("ja-ner-date");
+        // The date model used once is evicted, not the older but frequent person model
+        cache.get("en-ner-custom");
+        assertArrayEquals(new String[] {"en-ner-custom", "ja-ner-person"}, cache.getLoadedModels());
+    }
+
+    @Test
+    public void testFactory() throws Exception {
+        Properties param = new Properties();
+        param.setProperty(OpenNLP.MODEL_PATH, "src/test/resources/models");
+        param.setProperty(OpenNLP.MODEL_LANGUAGE, "ja");
+        param.setProperty(ModelCache.MODEL_CACHE_BYTES, "1000000");
+        NameFinderFactory factory = new NameFinderFactory(param);
+        ModelCache cache = factory.getModelCache();
+        assertNotNull(cache);
+        assertEquals(1000000L, cache.getMaxBytes());
+        assertArrayEquals(new String[] {"ja-ner-date", "ja-ner-person"}, factory.getModelNames("ja"));
+        assertEquals(0, cache.getLoadedModels().length);
+
+        assertNotNull(factory.getNameFinders("ja", "person"));
+        assertArrayEquals(new String[] {"ja-ner-person"}, cache.getLoadedModels());
+        assertEquals(2, factory.getLanguageNameFinders("ja").length);
+        assertEquals(2L, cache.getLoads());
+    }
+
+    @Test
+    public void testEvictedModelCollected() throws Exception {
+        long personSize = ModelCache.estimateSize(new TokenNameFinderModel(person), person);
+        long dateSize = ModelCache.estimateSize(new TokenNameFinderModel(date), date);
+        ModelCache cache = new ModelCache(Math.max(personSize, dateSize) + 1024L).register(person).register(date);
+        NameFinderPool pool = cache.get("ja-ner-person");
+        String[] sentence = "1990 年 5 月 25 日 は、 あなた は 田中 真由美 の 友達 ではありませんか？".split(" ");
+        // Bound to this thread and to a worker thread
+        pool.find(sentence);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(() -> cache.get("ja-ner-person").find(sentence)).get();
+        WeakReference<TokenNameFinderModel> model = new WeakReference<>(pool.getModel());
+
+        assertNotNull(cache.get("ja-ner-date"));
+        assertTrue(pool.isClosed());
+        pool = null;
+        for (int i = 0; i < 50 && null != model.get(); i++) {
+            System.gc();
+            Thread.sleep(20L);
+        }
+        assertNull(model.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void testGetAllWithinBudget() throws Exception {
+        long personSize = ModelCache.estimateSize(new TokenNameFinderModel(person), person);
+        long dateSize = ModelCache.estimateSize(new TokenNameFinderModel(date), date);
+        // Only one model fits
+        ModelCache cache = new ModelCache(Math.max(personSize, dateSize) + 1024L).register(person).register(date);
+        NameFinderFactory factory = new NameFinderFactory(cache);
+        assertEquals(1, factory.getLanguageNameFinders("ja").length);
+        assertEquals(1, cache.getLoadedModels().length);
+        long loads = cache.getLoads();
+        long evictions = cache.getEvictions();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1, factory.getLanguageNameFinders("ja").length);
+        }
+        // Not loaded and evicted by each call
+        assertEquals(loads, cache.getLoads());
+        assertEquals(evictions, cache.getEvictions());
+        assertTrue(cache.getUsedBytes() <= cache.getMaxBytes());
+
+        // The loaded model first
+        assertNotNull(cache.get("ja-ner-date"));
+        assertEquals(1L, cache.getEvictions());
+        assertArrayEquals(new String[] {"ja-ner-date"}, cache.getAll(Arrays.asList("ja-ner-person", "ja-ner-date"))
+                .keySet().toArray(new String[0]));
+        assertFalse(cache.get("ja-ner-date").isClosed());
+
+        // Both models fit
+        cache = new ModelCache(personSize + dateSize + 1024L).register(person).register(date);
+        assertEquals(2, new NameFinderFactory(cache).getLanguageNameFinders("ja").length);
+    }
+}
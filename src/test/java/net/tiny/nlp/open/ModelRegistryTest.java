@@ -0,0 +1,90 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import opennlp.tools.namefind.TokenNameFinder;
+
+public class ModelRegistryTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void testReload() throws Exception {
+        copy("models/ja-ner-person.bin", folder.resolve("ja-ner-person.bin"));
+        Files.write(folder.resolve("readme.txt"), "not a model".getBytes());
+        NameFinderFactory factory = new NameFinderFactory(Collections.emptyMap(), null);
+        ModelRegistry registry = new ModelRegistry(factory, folder, "ja");
+        long version = registry.reload();
+        assertEquals(1L, version);
+        assertArrayEquals(new String[] {"ja-ner-person"}, factory.getAllModelNames());
+        // Not modified
+        assertEquals(version, registry.reload());
+
+        TokenNameFinder person = factory.getNameFinder("ja-ner-person");
+        copy("models/ja-ner-date.bin", folder.resolve("ja-ner-date.bin"));
+        Files.setLastModifiedTime(folder.resolve("ja-ner-person.bin"),
+                FileTime.fromMillis(System.currentTimeMillis() + 10000L));
+        assertEquals(version + 1, registry.reload());
+        assertArrayEquals(new String[] {"ja-ner-date", "ja-ner-person"}, factory.getModelNames("ja"));
+        // Swapped to a new instance
+        assertNotSame(person, factory.getNameFinder("ja-ner-person"));
+        // The replaced pool is closed
+        assertTrue(((NameFinderPool) person).isClosed());
+
+        Files.delete(folder.resolve("ja-ner-date.bin"));
+        registry.reload();
+        assertArrayEquals(new String[] {"ja-ner-person"}, factory.getModelNames("ja"));
+        assertEquals(1, registry.getLoadedFiles().size());
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        NameFinderFactory factory = new NameFinderFactory(Collections.emptyMap(), null);
+        try (ModelRegistry registry = new ModelRegistry(factory, folder, "ja", 100L).start()) {
+            assertTrue(factory.isEmpty());
+            assertTrue(registry.getLoadedFiles().isEmpty());
+            // Written to a temporary name then moved in
+            Path temp = Files.createTempFile("model", ".tmp");
+            copy("models/ja-ner-date.bin", temp);
+            Files.move(temp, folder.resolve("ja-ner-date.bin"), StandardCopyOption.ATOMIC_MOVE);
+            waitFor(() -> null != factory.getNameFinder("ja-ner-date"));
+            assertEquals(1, registry.getLoadedFiles().size());
+
+            String[] sentence = "1990 年 5 月 25 日 は、 あなた は 田中 真由美 の 友達 ではありませんか？".split("\\s+");
+            assertTrue(factory.getNameFinder("ja", "date").find(sentence).length > 0);
+
+            Files.delete(folder.resolve("ja-ner-date.bin"));
+            waitFor(factory::isEmpty);
+        }
+    }
+
+    private static void copy(String resource, Path target) throws Exception {
+        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // The watch service of some platforms polls every few seconds
+    private static void waitFor(BooleanSupplier condition) throws Exception {
+        long timeout = System.currentTimeMillis() + 20000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < timeout, "Timeout");
+            Thread.sleep(50L);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ModelScannerTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    public void testIsModel() throws Exception {
+        assertTrue(ModelScanner.isModel("ja-ner-person.bin", "ja"));
+        assertTrue(ModelScanner.isModel("ja-ner.bin", "ja"));
+        assertTrue(ModelScanner.isModel("rondhuit-ja-ner-1.0.0.bin", "ja"));
+        assertFalse(ModelScanner.isModel("en-ner-person.bin", "ja"));
+        assertFalse(ModelScanner.isModel("ja-ner-person.txt", "ja"));
+        assertFalse(ModelScanner.isModel("ja-pos.bin", "ja"));
+    }
+
+    @Test
+    public void testScanJar() throws Exception {
+        Path jar = createJar(folder.resolve("dic.jar"));
+        Path dir = Files.createDirectories(folder.resolve("classes/opennlp/models"));
+        copy("models/ja-ner-date.bin", dir.resolve("ja-ner-date.bin"));
+        List<URL> classpath = Arrays.asList(jar.toUri().toURL(), folder.resolve("classes").toUri().toURL());
+
+        Path manifest = folder.resolve("models.idx");
+        ModelScanner scanner = new ModelScanner(manifest);
+        List<String> names = names(scanner.scan(classpath, "ja"));
+        assertEquals(Arrays.asList("ja-ner", "ja-ner-person", "ja-ner-date"), names);
+        assertEquals(1, scanner.getScannedJars());
+        assertEquals(0, scanner.getCachedJars());
+        scanner.save();
+        assertTrue(Files.exists(manifest));
+
+        // The next boot reads the manifest
+        scanner = new ModelScanner(manifest);
+        assertEquals(names, names(scanner.scan(classpath, "ja")));
+        assertEquals(0, scanner.getScannedJars());
+        assertEquals(1, scanner.getCachedJars());
+        assertEquals(0, scanner.scan(classpath, "fr").size());
+
+        // The model in a jar can be loaded
+        NameFinderFactory factory = new NameFinderFactory(Collections.emptyMap(), null);
+        factory.load(scanner.scan(classpath, "ja"), Runnable::run).join();
+        assertEquals(3, factory.getModelNames("ja").length);
+    }
+
+    @Test
+    public void testFindInClasspathFolder() throws Exception {
+        Path jar = createJar(folder.resolve("models.jar"));
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] {jar.toUri().toURL()}, loader)) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            List<URL> models = new ModelScanner(null).find("opennlp/models", "ja");
+            assertEquals(Arrays.asList("ja-ner-person"), names(models));
+            assertEquals("jar", models.get(0).getProtocol());
+
+            Properties param = new Properties();
+            param.setProperty(OpenNLP.MODEL_LANGUAGE, "ja");
+            assertEquals(Arrays.asList("ja-ner-person"), names(ModelScanner.discover(param)));
+            param.setProperty(ModelScanner.MODEL_SCAN, ModelScanner.SCAN_CLASSPATH);
+            param.setProperty(ModelScanner.MODEL_MANIFEST, folder.resolve("discover.idx").toString());
+            List<String> all = names(ModelScanner.discover(param));
+            assertTrue(all.containsAll(Arrays.asList("ja-ner-person", "ja-ner")), all.toString());
+            assertTrue(Files.exists(folder.resolve("discover.idx")));
+        } finally {
+            Thread.currentThread().setContextClassLoader(loader);
+        }
+    }
+
+    @Test
+    public void testCachedManifestClasspath() throws Exception {
+        Path lib = createJar(folder.resolve("lib.jar"));
+        Manifest mf = new Manifest();
+        mf.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        mf.getMainAttributes().put(Attributes.Name.CLASS_PATH, "lib.jar");
+        Path app = folder.resolve("app.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(app), mf)) {
+            out.putNextEntry(new JarEntry("app/"));
+        }
+        Path manifest = folder.resolve("classpath.idx");
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] {app.toUri().toURL()}, loader)) {
+            Thread.currentThread().setContextClassLoader(classLoader);
+            ModelScanner scanner = new ModelScanner(manifest);
+            assertTrue(scanner.classpath().contains(lib.toUri().toURL()));
+            assertTrue(scanner.getScannedJars() >= 2);
+            scanner.save();
+
+            // The next boot reads the Class-Path from the manifest, no jar is opened
+            scanner = new ModelScanner(manifest);
+            assertTrue(scanner.classpath().contains(lib.toUri().toURL()));
+            assertEquals(0, scanner.getScannedJars());
+            assertTrue(scanner.getCachedJars() >= 2);
+        } finally {
+            Thread.currentThread().setContextClassLoader(loader);
+        }
+    }
+
+    private static List<String> names(List<URL> models) {
+        return models.stream().map(OpenNLP::guestModelName).collect(Collectors.toList());
+    }
+
+    // A jar of 'rondhuit/rondhuit-ja-ner-1.0.0.bin' and 'opennlp/models/ja-ner-person.bin'
+    private static Path createJar(Path jar) throws Exception {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new JarEntry("rondhuit/"));
+            out.putNextEntry(new JarEntry("rondhuit/rondhuit-ja-ner-1.0.0.bin"));
+            write("models/ja-ner-person.bin", out);
+            out.putNextEntry(new JarEntry("opennlp/"));
+            out.putNextEntry(new JarEntry("opennlp/models/"));
+            out.putNextEntry(new JarEntry("opennlp/models/ja-ner-person.bin"));
+            write("models/ja-ner-person.bin", out);
+            out.putNextEntry(new JarEntry("opennlp/models/en-ner-custom.bin"));
+            write("models/en-ner-custom.bin", out);
+        }
+        return jar;
+    }
+
+    private static void write(String resource, OutputStream out) throws Exception {
+        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource)) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    private static void copy(String resource, Path target) throws Exception {
+        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource)) {
+            Files.copy(in, target);
+        }
+    }
+}
@@ -1,12 +1,29 @@
 package net.tiny.nlp.open;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.util.Span;
 
 public class NameFinderFactoryTest {
 
@@ -58,4 +75,103 @@ public class NameFinderFactoryTest {
         assertEquals("投手", extraction.findFirst("TITLE"));
     }
 
+    @Test
+    public void testConcurrentNameFinders() throws Exception {
+        NameFinderFactory factory = new NameFinderFactory("models/ja-ner-person.bin");
+        NameFinderPool pool = factory.getNameFinderPool("ja", "person");
+        assertNotNull(pool);
+        // Same thread same finder until cleared, other thread other finder with the same model
+        NameFinderME finder = pool.get();
+        assertSame(finder, pool.get());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        assertNotSame(finder, executor.submit(() -> pool.get()).get());
+        pool.clearAdaptiveData();
+        // Borrowed finders are not bound, a released one is reused
+        NameFinderME borrowed = factory.getNameFinders("ja", "person");
+        assertSame(finder, borrowed);
+        assertNotSame(borrowed, factory.getNameFinders("ja", "person"));
+        pool.release(borrowed);
+        assertSame(borrowed, pool.borrow());
+
+        // A closed pool keeps the bound finder and hands out unbound ones
+        NameFinderPool closing = new NameFinderPool(pool.getModel());
+        NameFinderME bound = closing.get();
+        closing.close();
+        assertSame(bound, closing.get());
+        closing.clearAdaptiveData();
+        assertNotSame(closing.get(), closing.get());
+
+        final String[] sentence = "あなた は 田中 真由美 の 友達 ではありませんか？".split("\\s+");
+        final Span[] expected = pool.find(sentence);
+        pool.clearAdaptiveData();
+        assertEquals(1, expected.length);
+        List<Future<Span[]>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(executor.submit(() -> {
+                Span[] spans = pool.find(sentence);
+                pool.clearAdaptiveData();
+                return spans;
+            }));
+        }
+        for (Future<Span[]> result : results) {
+            assertArrayEquals(expected, result.get());
+        }
+        executor.shutdown();
+        factory.clear();
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testNameFinderMEConstructor() throws Exception {
+        NameFinderME finder = new NameFinderME(new TokenNameFinderModel(
+                Thread.currentThread().getContextClassLoader().getResource("models/ja-ner-person.bin")));
+        Map<String, NameFinderME> finders = new HashMap<>();
+        finders.put("ja-ner-person", finder);
+        NameFinderFactory factory = new NameFinderFactory(finders);
+        assertSame(finder, factory.getNameFinder("ja", "person"));
+        assertSame(finder, factory.getNameFinders("ja", "person"));
+        assertNull(factory.getNameFinderPool("ja", "person"));
+    }
+
+    @Test
+    public void testModelNameIndex() throws Exception {
+        TokenNameFinder person = new GazetteerNameFinder.Builder().add("person", "田中").build();
+        TokenNameFinder city = new GazetteerNameFinder.Builder().add("city", "東京").build();
+        TokenNameFinder other = new GazetteerNameFinder.Builder().add("other", "元").build();
+        NameFinderFactory factory = new NameFinderFactory(new HashMap<>(), null)
+                .append("ja-ner-person", person)
+                .append("ja-ner", other)
+                .append("en-ner-city", city)
+                .append("ja-nerd", city);
+        assertSame(person, factory.getNameFinder("ja", "person"));
+        // The default model of the language
+        assertSame(other, factory.getNameFinder("ja", "city"));
+        assertSame(other, factory.getNameFinder("ja", null));
+        assertSame(city, factory.getNameFinder("en", "city"));
+        assertNull(factory.getNameFinder("en", "person"));
+        assertNull(factory.getNameFinder("zh", "person"));
+        assertArrayEquals(new String[] {"ja-ner", "ja-ner-person"}, factory.getModelNames("ja"));
+        assertArrayEquals(new TokenNameFinder[] {other, person}, factory.getLanguageNameFinders("ja"));
+        assertEquals(0, factory.getLanguageNameFinders("zh").length);
+        // Not indexed by language, found by name
+        assertSame(city, factory.getNameFinder("ja-nerd"));
+        assertEquals(4, factory.getAllModelNames().length);
+
+        factory.remove("ja-ner");
+        assertNull(factory.getNameFinder("ja", "city"));
+        assertArrayEquals(new String[] {"ja-ner-person"}, factory.getModelNames("ja"));
+    }
+
+    @Test
+    public void testCacheModelNameIndex() throws Exception {
+        ModelCache cache = new ModelCache();
+        NameFinderFactory factory = new NameFinderFactory(cache);
+        assertTrue(factory.isEmpty());
+        // Indexed again after a registration
+        cache.register(Thread.currentThread().getContextClassLoader().getResource("models/ja-ner-date.bin"));
+        assertFalse(factory.isEmpty());
+        assertArrayEquals(new String[] {"ja-ner-date"}, factory.getModelNames("ja"));
+        assertNotNull(factory.getNameFinder("ja", "date"));
+        assertNull(factory.getNameFinder("ja", "person"));
+    }
 }
@@ -6,10 +6,19 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.util.Span;
+
 public class OpenNLPTest {
 
     @Test
@@ -105,6 +114,95 @@ public class OpenNLPTest {
         OpenNLP.parse("ja", "name", new String[] {"楽天", "を", "追い", "かけたい", "ヤフー"}, System.out);
     }
 
+    @Test
+    public void testPreload() throws Exception {
+        Properties args = new Properties();
+        args.put(OpenNLP.MODEL_PATH, "src/test/resources/models");
+        args.put(OpenNLP.MODEL_LANGUAGE, "ja");
+        OpenNLP.preload(args).join();
+        List<String> models = Arrays.asList(OpenNLP.getLoadedModels());
+        assertTrue(models.contains("ja-ner-person"));
+        assertTrue(models.contains("ja-ner-date"));
+        assertTrue(OpenNLP.isLanguageDetectorLoaded());
+    }
+
+    @Test
+    public void testExtractAll() throws Exception {
+        OpenNLP.appendModels("models/ja-ner-person.bin");
+        List<String[]> sentences = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            sentences.add("61歳 の 渡辺 紳助 さん は、11 月 29 日 に 非常 勤取締役 として 取締役会 に 参加 します。".split("\\s+"));
+            sentences.add("あなた は 田中 真由美 の 友達 ではありませんか？".split("\\s+"));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Extraction> extractions = OpenNLP.extractAll("ja", "person", sentences, executor);
+        assertEquals(sentences.size(), extractions.size());
+        for (int i = 0; i < sentences.size(); i += 2) {
+            assertEquals("渡辺 紳助", extractions.get(i).findFirst("Name"));
+            assertEquals("田中 真由美", extractions.get(i + 1).findFirst("Name"));
+        }
+
+        List<List<String[]>> documents = Arrays.asList(sentences.subList(0, 2), sentences.subList(2, 3));
+        extractions = OpenNLP.extractDocuments("ja", "person", documents, executor);
+        assertEquals(2, extractions.size());
+        assertEquals(2, extractions.get(0).find("Name").length);
+        assertEquals(1, extractions.get(1).find("Name").length);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testExtractAllIndependentSentences() throws Exception {
+        AtomicInteger finds = new AtomicInteger();
+        AtomicInteger clears = new AtomicInteger();
+        TokenNameFinder finder = new TokenNameFinder() {
+            @Override
+            public Span[] find(String[] tokens) {
+                finds.incrementAndGet();
+                return new Span[0];
+            }
+
+            @Override
+            public void clearAdaptiveData() {
+                clears.incrementAndGet();
+            }
+        };
+        OpenNLP.appendNameFinder("xx-ner-custom", finder);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<String[]> sentences = new ArrayList<>();
+            for (int i = 0; i < OpenNLP.BATCH_SIZE * 3; i++) {
+                sentences.add(new String[] {"a", "b"});
+            }
+            assertEquals(sentences.size(), OpenNLP.extractAll("xx", "custom", sentences, executor).size());
+            // The adaptive data is cleared after every sentence
+            assertEquals(sentences.size(), finds.get());
+            assertTrue(clears.get() >= finds.get());
+        } finally {
+            executor.shutdown();
+            OpenNLP.removeNameFinder("xx-ner-custom");
+        }
+    }
+
+    @Test
+    public void testExtractAllTypes() throws Exception {
+        OpenNLP.appendModels("models/ja-ner-person.bin", "models/ja-ner-date.bin");
+        String[] sentence = "1990 年 5 月 25 日 は、 あなた は 田中 真由美 の 友達 ではありませんか？".split("\\s+");
+        Extraction extraction = OpenNLP.extractAllTypes("ja", sentence);
+        assertEquals("田中 真由美", extraction.findFirst("Name"));
+        assertEquals("1990 年 5 月 25 日", extraction.findFirst("Date"));
+    }
+
+    @Test
+    public void testMergeSpans() throws Exception {
+        Span[] person = new Span[] {new Span(0, 2, "Name", 0.6d), new Span(5, 6, "Name", 0.9d)};
+        Span[] date = new Span[] {new Span(1, 4, "Date", 0.8d), new Span(6, 7, "Date", 0.5d)};
+        Span[] spans = OpenNLP.mergeSpans(8, person, date);
+        assertEquals(3, spans.length);
+        assertEquals(new Span(1, 4, "Date"), spans[0]);
+        assertEquals(new Span(5, 6, "Name"), spans[1]);
+        assertEquals(new Span(6, 7, "Date"), spans[2]);
+    }
+
     @Test
     public void testGuestLanguage() throws Exception {
         // Get the most probable language
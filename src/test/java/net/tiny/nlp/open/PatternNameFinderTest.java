@@ -0,0 +1,137 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import opennlp.tools.namefind.TokenNameFinder;
+import opennlp.tools.util.Span;
+
+public class PatternNameFinderTest {
+
+    static PatternNameFinder finder = new PatternNameFinder.Builder()
+            .add("Date", PatternNameFinder.JAPANESE_DATE)
+            .add("Phone", PatternNameFinder.PHONE)
+            .add("Email", PatternNameFinder.EMAIL)
+            .add("Number", PatternNameFinder.NUMBER)
+            .build();
+
+    @Test
+    public void testFind() throws Exception {
+        String[] tokens = "61 歳 の 渡辺 紳助 さん は 、 11 月 29 日 に 参加 し ます 。".split(" ");
+        Span[] spans = finder.find(tokens);
+        assertEquals(2, spans.length);
+        assertEquals(new Span(0, 1, "Number"), spans[0]);
+        assertEquals(new Span(8, 12, "Date"), spans[1]);
+        assertEquals(1d, spans[1].getProb());
+
+        spans = finder.find("大谷 翔平 投手 （ ２３ ） 2018 年 4 月".split(" "));
+        assertArrayEquals(new Span[] {new Span(4, 5, "Number"), new Span(6, 10, "Date")}, spans);
+
+        spans = finder.find("call 03-1234-5678 or mail info@example.co.jp now".split(" "));
+        assertArrayEquals(new Span[] {new Span(1, 2, "Phone"), new Span(4, 5, "Email")}, spans);
+
+        // Whole tokens only
+        assertEquals(0, finder.find("A380 info@ 11月".split(" ")).length);
+        assertEquals(0, finder.find(new String[0]).length);
+    }
+
+    @Test
+    public void testSyntax() throws Exception {
+        PatternNameFinder f = new PatternNameFinder.Builder()
+                .add("a", "(ab|c)+x?")
+                .add("b", "[^a-c.]{2,3}")
+                .add("c", "\\.\\d{2}")
+                .add("d", "x( (y|z))* w")
+                .build();
+        assertArrayEquals(new String[] {"a", "b", "c", "d"}, f.getTypes());
+        assertArrayEquals(new Span[] {new Span(0, 1, "a")}, f.find(new String[] {"abcabx"}));
+        assertArrayEquals(new Span[] {new Span(0, 1, "b")}, f.find(new String[] {"xyz"}));
+        assertEquals(0, f.find(new String[] {"xyzw"}).length);
+        assertArrayEquals(new Span[] {new Span(0, 1, "c")}, f.find(new String[] {".12"}));
+        assertArrayEquals(new Span[] {new Span(0, 4, "d")}, f.find("x y z w".split(" ")));
+        assertArrayEquals(new Span[] {new Span(0, 2, "d")}, f.find("x w".split(" ")));
+
+        assertThrows(IllegalArgumentException.class, () -> new PatternNameFinder.Builder().add("e", "(ab"));
+        assertThrows(IllegalArgumentException.class, () -> new PatternNameFinder.Builder().add("e", "a{3,1}"));
+        assertThrows(IllegalArgumentException.class, () -> new PatternNameFinder.Builder().add("e", "[a-"));
+        assertThrows(IllegalArgumentException.class, () -> new PatternNameFinder.Builder().add("e", "*a"));
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+        OpenNLP.appendNameFinder("xx-ner-pattern", finder);
+        try {
+            Extraction extraction = OpenNLP.extract("xx", "pattern", "11 月 29 日 に ２３ 人".split(" "));
+            assertEquals("11 月 29 日", extraction.findFirst("Date"));
+            assertEquals("２３", extraction.findFirst("Number"));
+        } finally {
+            assertEquals(finder, OpenNLP.removeNameFinder("xx-ner-pattern"));
+        }
+    }
+
+    @Test
+    public void testPreStage() throws Exception {
+        ModelCache cache = new ModelCache()
+                .register(Thread.currentThread().getContextClassLoader().getResource("models/ja-ner-person.bin"))
+                .register(Thread.currentThread().getContextClassLoader().getResource("models/ja-ner-date.bin"));
+        NameFinderFactory factory = new NameFinderFactory(cache)
+                .append("ja-ner-pattern", finder);
+        TokenNameFinder[] finders = factory.getLanguageNameFinders("ja");
+        assertEquals(2, finders.length);
+        assertSame(finder, finders[0]);
+        // The date model is covered by the patterns
+        assertArrayEquals(new String[] {"ja-ner-person"}, cache.getLoadedModels());
+
+        finders = factory.getLanguageNameFinders("ja", "date", "person");
+        assertEquals(2, finders.length);
+        assertSame(finder, finders[0]);
+        assertArrayEquals(new TokenNameFinder[] {finder}, factory.getLanguageNameFinders("ja", "Number"));
+        assertFalse(Arrays.asList(cache.getLoadedModels()).contains("ja-ner-date"));
+        assertSame(finder, factory.getNameFinder("ja", "date"));
+        assertFalse(Arrays.asList(cache.getLoadedModels()).contains("ja-ner-date"));
+        // Obtained by the model name
+        assertEquals(1, factory.getNameFinder("ja-ner-date")
+                .find("1990 年 5 月 25 日 は、 あなた は 田中 真由美 の 友達 ではありませんか？".split(" ")).length);
+    }
+
+    @Test
+    public void testSkipCoveredModel() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        TokenNameFinder date = new TokenNameFinder() {
+            @Override
+            public Span[] find(String[] tokens) {
+                calls.incrementAndGet();
+                return new Span[0];
+            }
+
+            @Override
+            public void clearAdaptiveData() {
+            }
+        };
+        OpenNLP.appendNameFinder("xx-ner-date", date);
+        OpenNLP.appendNameFinder("xx-ner-pattern", finder);
+        try {
+            String[] tokens = "11 月 29 日 に ２３ 人".split(" ");
+            assertEquals("11 月 29 日", OpenNLP.extractAllTypes("xx", tokens).findFirst("Date"));
+            Extraction extraction = new ExtractionPipeline()
+                    .setLanguageDetector(text -> "xx")
+                    .setTypes("date")
+                    .extract(String.join(" ", tokens));
+            assertEquals("11 月 29 日", extraction.findFirst("Date"));
+            // The single type
+            assertEquals("11 月 29 日", OpenNLP.extract("xx", "date", tokens).findFirst("Date"));
+            assertEquals(0, calls.get());
+        } finally {
+            OpenNLP.removeNameFinder("xx-ner-date");
+            OpenNLP.removeNameFinder("xx-ner-pattern");
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class ScriptClassifierTest {
+
+    @Test
+    public void testClassify() throws Exception {
+        assertEquals(Arrays.asList("jpn"), ScriptClassifier.classify("お名前"));
+        assertEquals(Arrays.asList("jpn"), ScriptClassifier.classify("61歳の渡辺紳助さんは、タレント。"));
+        assertEquals(Arrays.asList("jpn"), ScriptClassifier.classify("コーヒー"));
+        assertEquals(Arrays.asList("kor"), ScriptClassifier.classify("안녕하세요 세계"));
+        assertEquals(Arrays.asList("tha"), ScriptClassifier.classify("สวัสดีครับ"));
+        assertEquals(Arrays.asList("ell"), ScriptClassifier.classify("Καλημέρα κόσμε"));
+        assertEquals(Arrays.asList("heb"), ScriptClassifier.classify("שלום עולם"));
+        assertEquals(ScriptClassifier.CYRILLIC, ScriptClassifier.classify("Већина становника боравила је кућама од блата или шаторима"));
+        assertEquals(ScriptClassifier.ARABIC, ScriptClassifier.classify("مرحبا بالعالم"));
+        assertEquals(ScriptClassifier.DEVANAGARI, ScriptClassifier.classify("नमस्ते दुनिया"));
+        // Han only text is Chinese or Japanese, the model chooses
+        assertEquals(ScriptClassifier.HAN, ScriptClassifier.classify("名前"));
+        assertEquals(ScriptClassifier.HAN, ScriptClassifier.classify("姓名"));
+    }
+
+    @Test
+    public void testSharedCandidates() throws Exception {
+        final List<String> candidates = ScriptClassifier.classify("мир");
+        assertSame(ScriptClassifier.CYRILLIC, candidates);
+        assertSame(candidates, ScriptClassifier.classify("мир"));
+        // The shared candidates can not be modified
+        assertThrows(UnsupportedOperationException.class, () -> candidates.set(0, "xxx"));
+        assertEquals("rus", ScriptClassifier.CYRILLIC.get(0));
+    }
+
+    @Test
+    public void testAmbiguous() throws Exception {
+        assertNull(ScriptClassifier.classify("English Japanese Mandarin Chinese"));
+        assertNull(ScriptClassifier.classify("Alle Jahre wieder: Millionen Spanier haben am Dienstag"));
+        assertNull(ScriptClassifier.classify("1990 - 2019 !!"));
+        assertNull(ScriptClassifier.classify(""));
+        // Mixed scripts
+        assertNull(ScriptClassifier.classify("Tokyo 東京 とうきょう Tokyo Tokyo"));
+    }
+}
@@ -0,0 +1,114 @@
+package net.tiny.nlp.open;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.sentdetect.SentenceSampleStream;
+import opennlp.tools.util.CollectionObjectStream;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.TrainingParameters;
+
+public class SentenceDetectorFactoryTest {
+
+    static final String TEXT = "The quick brown fox jumps. The lazy dog sleeps. A cat runs away!";
+
+    static void trainModel(Path file) throws Exception {
+        List<String> lines = new ArrayList<>();
+        String[] sentences = {"The quick brown fox jumps.", "The lazy dog sleeps.", "A cat runs away!",
+                "Is it a bird?", "Mr. Smith goes to Washington.", "It was cold."};
+        for (int i = 0; i < 20; i++) {
+            for (String sentence : sentences) {
+                lines.add(sentence);
+            }
+            lines.add("");
+        }
+        TrainingParameters params = TrainingParameters.defaultParams();
+        params.put(TrainingParameters.CUTOFF_PARAM, 0);
+        params.put(TrainingParameters.ITERATIONS_PARAM, 50);
+        SentenceModel model = SentenceDetectorME.train("xx",
+                new SentenceSampleStream(new CollectionObjectStream<>(lines)),
+                new opennlp.tools.sentdetect.SentenceDetectorFactory("xx", true, null, null), params);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            model.serialize(out);
+        }
+    }
+
+    @Test
+    public void testLoadFromFile(@TempDir Path dir) throws Exception {
+        trainModel(dir.resolve("xx-sent.bin"));
+        SentenceDetectorFactory factory = new SentenceDetectorFactory(dir.toString(), "xx");
+        assertNotNull(factory.getSentenceDetector());
+        String[] sentences = factory.getSentenceDetector().sentDetect(TEXT);
+        assertEquals(3, sentences.length);
+        assertEquals("A cat runs away!", sentences[2]);
+        assertTrue(factory.getSentenceDetector("xx") == factory.getSentenceDetector());
+        assertNull(factory.getSentenceDetector("yy"));
+        assertArrayEquals(new String[] {"xx"}, factory.getLanguages());
+
+        assertThrows(FileNotFoundException.class, () -> new SentenceDetectorFactory(dir.toString(), "yy"));
+    }
+
+    @Test
+    public void testCjkDefault(@TempDir Path dir) throws Exception {
+        // No Japanese model, the rule based detector is used
+        SentenceDetectorFactory factory = new SentenceDetectorFactory(dir.toString(), "ja");
+        assertTrue(factory.getSentenceDetector() == CjkSentenceDetector.INSTANCE);
+        assertTrue(factory.getSentenceDetector("zh") == CjkSentenceDetector.INSTANCE);
+        assertEquals(2, factory.getSentenceDetector("ja").sentDetect("今日は晴れです。明日は雨ですか？").length);
+    }
+
+    @Test
+    public void testLoadFromClasspath(@TempDir Path dir) throws Exception {
+        Files.createDirectories(dir.resolve("models"));
+        trainModel(dir.resolve("models/xx-sent.bin"));
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try (URLClassLoader classpath = new URLClassLoader(new URL[] {dir.toUri().toURL()}, loader)) {
+            Thread.currentThread().setContextClassLoader(classpath);
+            SentenceDetectorFactory factory = new SentenceDetectorFactory("models", "xx");
+            assertEquals(3, factory.getSentenceDetector("xx").sentPosDetect(TEXT).length);
+        } finally {
+            Thread.currentThread().setContextClassLoader(loader);
+        }
+    }
+
+    @Test
+    public void testConcurrentDetection(@TempDir Path dir) throws Exception {
+        trainModel(dir.resolve("xx-sent.bin"));
+        SentenceDetectorFactory factory = new SentenceDetectorFactory(dir.toString(), "xx");
+        List<String> documents = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            documents.add(i % 2 == 0 ? TEXT : "It was cold. Is it a bird?");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Span[]> spans = factory.sentPosDetect("xx", documents, executor);
+            assertEquals(documents.size(), spans.size());
+            for (int i = 0; i < documents.size(); i++) {
+                assertEquals(i % 2 == 0 ? 3 : 2, spans.get(i).length);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThrows(IllegalArgumentException.class, () -> factory.sentPosDetect("yy", documents));
+    }
+}
@@ -2,17 +2,29 @@ package net.tiny.nlp.open;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
 
 public class TextualizationTest {
 
@@ -23,6 +35,109 @@ public class TextualizationTest {
         assertEquals("This text is normal.\r\nThis text is bold.\r\n", text);
     }
 
+    @Test
+    public void testUnknownCharset(@TempDir Path dir) throws Exception {
+        Path page = Files.write(dir.resolve("page.html"), "<p>text</p>".getBytes(StandardCharsets.US_ASCII));
+        URL url = page.toUri().toURL();
+        // Logged and no text, as an unreadable page
+        assertNull(Textualization.text(url, "no-such-charset"));
+        assertNull(Textualization.text(url, "bad charset name"));
+    }
+
+    @Test
+    public void testSameAsRegexText() throws Exception {
+        String[] contents = new String[] {
+            "<html><head><script type=\"text/javascript\">if (a < b) { x = '<p>'; }</script>\n<STYLE>p { color: red; }</STYLE></head>\n<body>A  <b>B</b>   C\n\n \t \n D</body></html>",
+            "a < b and c > d <> e",
+            "<p>unclosed <script>var x = 1;\n<b>bold</b>",
+            "< script >x</ script >y< / SCRIPT >z",
+            "line1\r\n   \r\n\r\nline2  \r\n  ",
+            "text <a href='x'\nclass=\"y\">link</a> tail <",
+        };
+        for (String content : contents) {
+            assertEquals(regexText(content), Textualization.text(content));
+        }
+    }
+
+    @Test
+    public void testBenchmarkLargePage() throws Exception {
+        StringBuilder page = new StringBuilder("<html><head><style>body { margin: 0; }</style></head><body>\r\n");
+        for (int i = 0; i < 20000; i++) {
+            page.append("<div class=\"row\">  <span>大谷 翔平 投手 ").append(i).append("</span>   <a href=\"/p/").append(i)
+                .append("\">link</a></div>\r\n  \r\n<script>var i = ").append(i).append(";</script>\r\n");
+        }
+        page.append("</body></html>");
+        String html = page.toString();
+        assertEquals(regexText(html), Textualization.text(html));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            regexText(html);
+        }
+        long regex = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            Textualization.text(html);
+        }
+        long stripper = System.nanoTime() - start;
+        System.out.println(String.format("Page %dKB regex: %dms single pass: %dms",
+                html.length() / 1024, regex / 5000000L, stripper / 5000000L));
+    }
+
+    @Test
+    public void testStreamText() throws Exception {
+        String content = "<!DOCTYPE html>\r\n<html>\r\n<body>\r\n<p>大谷  翔平 投手</p>\r\n<script>var a;</script><p><b>This   text is bold.</b></p>\r\n</body>\r\n</html>";
+        String text = Textualization.text(new ByteArrayInputStream(content.getBytes("Shift_JIS")), Charset.forName("Shift_JIS"));
+        assertEquals(Textualization.text(content), text);
+        assertEquals("大谷 翔平 投手\r\nThis text is bold.\r\n", text);
+
+        List<String> lines = new ArrayList<>();
+        Textualization.text(new StringReader(content), lines::add);
+        assertEquals(Arrays.asList("大谷 翔平 投手", "This text is bold."), lines);
+    }
+
+    // The former implementation of Textualization.text(String) by regular expressions
+    static String regexText(String content) {
+        String text = content;
+        text = Pattern.compile("<[\\s]*?script[^>]*?>[\\s\\S]*?<[\\s]*?\\/[\\s]*?script[\\s]*?>", Pattern.CASE_INSENSITIVE).matcher(text).replaceAll("");
+        text = Pattern.compile("<[\\s]*?style[^>]*?>[\\s\\S]*?<[\\s]*?\\/[\\s]*?style[\\s]*?>", Pattern.CASE_INSENSITIVE).matcher(text).replaceAll("");
+        text = Pattern.compile("<[^>]+>", Pattern.CASE_INSENSITIVE).matcher(text).replaceAll("");
+        text = text.replaceAll("[ ]+", " ");
+        return text.replaceAll("(?m)^\\s*$(\\n|\\r\\n)", "");
+    }
+
+    @Test
+    public void testFetchCache(@TempDir Path dir) throws Exception {
+        String page = "<html><body><p>cached page</p></body></html>";
+        AtomicInteger notModified = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/page", ex -> {
+            if ("\"v1\"".equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                ex.sendResponseHeaders(304, -1);
+                ex.close();
+                return;
+            }
+            ex.getResponseHeaders().set("ETag", "\"v1\"");
+            HttpFetcherTest.send(ex, 200, page.getBytes(StandardCharsets.UTF_8), null);
+        });
+        server.start();
+        try {
+            Textualization.setFetchCache(new FetchCache(dir));
+            String url = "http://localhost:" + server.getAddress().getPort() + "/page";
+            assertEquals(page, Textualization.fetch(url));
+            assertEquals(0, notModified.get());
+            // Served from the cache on '304 Not Modified'
+            assertEquals(page, Textualization.fetch(url));
+            assertEquals(1, notModified.get());
+            assertTrue(Textualization.getFetchCache().size() > 0L);
+        } finally {
+            Textualization.setFetchCache(null);
+            server.stop(0);
+        }
+        assertNull(Textualization.getFetchCache());
+    }
+
     @Test
     public void testURLEncodeDecode() throws Exception {
         String url = "https://dic.nicovideo.jp/a/日本人の名前一覧";